@@ -0,0 +1,74 @@
+package com.gelerion.otel.playground;
+
+import spark.Request;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// A Spark Request without a servlet container behind it; just enough for the filters.
+class FakeRequest extends Request {
+    private final String method;
+    private final String path;
+    private final Map<String, String> headers;
+    private final Map<String, String> params;
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    FakeRequest(String method, String path, Map<String, String> headers, Map<String, String> params) {
+        this.method = method;
+        this.path = path;
+        this.headers = headers;
+        this.params = params;
+    }
+
+    // Requests are reused across benchmark invocations, so the per-request state is dropped in between.
+    void reset() {
+        attributes.clear();
+    }
+
+    @Override
+    public String requestMethod() {
+        return method;
+    }
+
+    @Override
+    public String pathInfo() {
+        return path;
+    }
+
+    @Override
+    public String headers(String header) {
+        return headers.get(header);
+    }
+
+    @Override
+    public Set<String> headers() {
+        return headers.keySet();
+    }
+
+    @Override
+    public Map<String, String> params() {
+        return params;
+    }
+
+    @Override
+    public String params(String param) {
+        return params.get(param);
+    }
+
+    @Override
+    public void attribute(String attribute, Object value) {
+        attributes.put(attribute, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T attribute(String attribute) {
+        return (T) attributes.get(attribute);
+    }
+
+    @Override
+    public Set<String> attributes() {
+        return attributes.keySet();
+    }
+}
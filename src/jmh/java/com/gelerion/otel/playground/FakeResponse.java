@@ -0,0 +1,56 @@
+package com.gelerion.otel.playground;
+
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// A Spark Response without a servlet container behind it; just enough for the filters.
+class FakeResponse extends Response {
+    private final Map<String, String> headers = new HashMap<>();
+    private int status = 200;
+    private String type;
+    private String body;
+
+    void reset() {
+        headers.clear();
+        status = 200;
+        type = null;
+        body = null;
+    }
+
+    @Override
+    public void status(int statusCode) {
+        this.status = statusCode;
+    }
+
+    @Override
+    public int status() {
+        return status;
+    }
+
+    @Override
+    public void type(String contentType) {
+        this.type = contentType;
+    }
+
+    @Override
+    public String type() {
+        return type;
+    }
+
+    @Override
+    public void body(String body) {
+        this.body = body;
+    }
+
+    @Override
+    public String body() {
+        return body;
+    }
+
+    @Override
+    public void header(String header, String value) {
+        headers.put(header, value);
+    }
+}
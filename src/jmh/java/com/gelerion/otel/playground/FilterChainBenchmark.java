@@ -0,0 +1,166 @@
+package com.gelerion.otel.playground;
+
+import com.gelerion.otel.playground.config.otel.TelemetryHandles;
+import com.gelerion.otel.playground.filters.after.MetricsRecorderAfterFilter;
+import com.gelerion.otel.playground.filters.before.FeatureFlagBeforeFilter;
+import com.gelerion.otel.playground.filters.before.LoggingTraceContextSetterBeforeFilter;
+import com.gelerion.otel.playground.filters.before.MetricsRecorderBeforeFilter;
+import com.gelerion.otel.playground.filters.before.OtelContextPropagationBeforeFilter;
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.routing.RouteRegistry;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.baggage.propagation.W3CBaggagePropagator;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.apache.logging.log4j.ThreadContext;
+import org.openjdk.jmh.annotations.*;
+import spark.Filter;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+Per-request overhead of the instrumentation filters, run against fake Spark requests/responses and an in-memory
+span exporter and metric reader (no network, no servlet container).
+  make bench bench=FilterChainBenchmark
+Compare ops/s and gc.alloc.rate.norm (bytes/op) between commits to catch regressions on the request path.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterChainBenchmark {
+    private static final String TRACEPARENT = "00-ae648eec7239bbbf2c7260ac51494a6d-0f137dca09baf7bd-01";
+
+    private OpenTelemetrySdk sdk;
+    private InMemorySpanExporter spanExporter;
+
+    private FakeRequest request;
+    private FakeResponse response;
+
+    private FeatureFlagBeforeFilter featureFlag;
+    private OtelContextPropagationBeforeFilter otelContextPropagation;
+    private LoggingTraceContextSetterBeforeFilter loggingTraceContextSetter;
+    private MetricsRecorderBeforeFilter metricsRecorderBefore;
+    private MetricsRecorderAfterFilter metricsRecorderAfter;
+    private Filter cleanupContext;
+
+    private Span activeSpan;
+    private Scope activeScope;
+
+    @Setup
+    public void setup() {
+        spanExporter = InMemorySpanExporter.create();
+        sdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(spanExporter))
+                        .build())
+                .setMeterProvider(SdkMeterProvider.builder()
+                        .registerMetricReader(InMemoryMetricReader.create())
+                        .build())
+                .setPropagators(ContextPropagators.create(TextMapPropagator.composite(
+                        W3CTraceContextPropagator.getInstance(), W3CBaggagePropagator.getInstance())))
+                .build();
+        GlobalOpenTelemetry.resetForTest();
+        GlobalOpenTelemetry.set(sdk);
+        TelemetryHandles.install(sdk);
+
+        RouteRegistry routes = new RouteRegistry();
+        routes.register("GET", "/v1/hello/:name");
+        MetricsProvider metricsProvider = new MetricsProvider();
+
+        featureFlag = new FeatureFlagBeforeFilter();
+        otelContextPropagation = new OtelContextPropagationBeforeFilter(routes);
+        loggingTraceContextSetter = new LoggingTraceContextSetterBeforeFilter();
+        metricsRecorderBefore = new MetricsRecorderBeforeFilter(metricsProvider, routes);
+        metricsRecorderAfter = new MetricsRecorderAfterFilter(metricsProvider, routes);
+        cleanupContext = Server.cleanupContext();
+
+        request = new FakeRequest("GET", "/v1/hello/john",
+                Map.of("traceparent", TRACEPARENT, "X-Feature-Flag", "high-latency"),
+                Map.of(":name", "john"));
+        response = new FakeResponse();
+
+        // The MDC filter reads the current span, so it gets one for the whole trial.
+        activeSpan = TelemetryHandles.tracer().spanBuilder("GET /v1/hello/:name").startSpan();
+        activeScope = activeSpan.makeCurrent();
+    }
+
+    // The in-memory exporter keeps every span; dropping them between iterations keeps the heap flat.
+    @TearDown(Level.Iteration)
+    public void resetExporter() {
+        spanExporter.reset();
+    }
+
+    @TearDown
+    public void tearDown() {
+        activeScope.close();
+        activeSpan.end();
+        GlobalOpenTelemetry.resetForTest();
+        sdk.close();
+    }
+
+    // Extracts the context, starts the SERVER span, and activates it. The scope must be closed and the span ended
+    // in the same invocation, so that's included (it's the cheap part of the cleanup).
+    @Benchmark
+    public void otelContextPropagation() throws Exception {
+        request.reset();
+        otelContextPropagation.handle(request, response);
+        request.<Scope>attribute(OtelContextPropagationBeforeFilter.OTEL_SCOPE_ATTR).close();
+        request.<Span>attribute(OtelContextPropagationBeforeFilter.OTEL_SERVER_SPAN_ATTR).end();
+    }
+
+    // Resolves the (interned) profile from the header and makes it current; the scope is closed by the cleanup.
+    @Benchmark
+    public void featureFlag() throws Exception {
+        request.reset();
+        featureFlag.handle(request, response);
+        request.<Scope>attribute(FeatureFlagBeforeFilter.FEATURE_FLAG_SCOPE_ATTR).close();
+    }
+
+    @Benchmark
+    public void loggingTraceContextSetter() {
+        loggingTraceContextSetter.handle(request, response);
+        ThreadContext.clearMap();
+    }
+
+    // http.server.active_requests increment, then duration/count recording and the decrement.
+    @Benchmark
+    public void metricsRecorders() throws Exception {
+        request.reset();
+        metricsRecorderBefore.handle(request, response);
+        metricsRecorderAfter.handle(request, response);
+    }
+
+    // The context propagation filter is needed to set up what the cleanup filter tears down.
+    @Benchmark
+    public void otelContextPropagationAndCleanup() throws Exception {
+        request.reset();
+        otelContextPropagation.handle(request, response);
+        cleanupContext.handle(request, response);
+    }
+
+    // Everything a request goes through, except the route itself.
+    @Benchmark
+    public void fullChain() throws Exception {
+        request.reset();
+        response.reset();
+        otelContextPropagation.handle(request, response);
+        featureFlag.handle(request, response);
+        loggingTraceContextSetter.handle(request, response);
+        metricsRecorderBefore.handle(request, response);
+        metricsRecorderAfter.handle(request, response);
+        cleanupContext.handle(request, response);
+    }
+}
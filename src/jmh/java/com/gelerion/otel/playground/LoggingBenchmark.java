@@ -0,0 +1,176 @@
+package com.gelerion.otel.playground;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.api.trace.TraceState;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.instrumentation.log4j.appender.v2_17.OpenTelemetryAppender;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.SdkLoggerProvider;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.BatchLogRecordProcessor;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+import io.opentelemetry.sdk.trace.IdGenerator;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.async.AsyncLoggerContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+The logging cost of one request on the request thread: the eight log calls the controller, DbOperations and
+RemoteClient make, inside a span, through log4j2-benchmark.xml (the JSON layout into /dev/null, and the OpenTelemetry
+appender with a batch processor and an exporter that only counts).
+  - work:   the request without logging (Blackhole.consumeCPU), the baseline to subtract,
+  - sync:   the default configuration; both appenders run on the request thread,
+  - syncWithoutLocation: the same without the caller location (captureCodeAttributes), which walks the stack per call,
+  - async:  AsyncLoggerContextSelector; the request thread only fills ring buffer slots,
+  - syncUnsampled: sync, but each request is a new trace the head sampler dropped. LogSamplingFilter (on the
+            OpenTelemetry appender ref) keeps 10% of those traces, and only 5 lines per template and 10s of them;
+            the console still gets every line.
+The simulated work gives the background thread time to keep up, as between real requests, so async doesn't just
+measure the discard path. After each iteration the log records that reached the exporter per request are printed
+(8 = nothing dropped), and for async the free ring buffer capacity.
+Run with `-prof gc`: gc.alloc.rate.norm includes the background thread, so it's the allocation per request overall.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-benchmark.xml")
+public class LoggingBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(LoggingBenchmark.class);
+    private static final URI RECOMMENDATIONS = URI.create("https://recommendations.internal/api/v1/recommend?userName=alpha");
+
+    // ~20us and ~100us of CPU per request.
+    @Param({"10000", "50000"})
+    public long work;
+
+    private OpenTelemetrySdk sdk;
+    private Span span;
+    private Scope scope;
+    private final IdGenerator ids = IdGenerator.random();
+    private final AtomicLong exported = new AtomicLong();
+    private long requests;
+
+    @Setup
+    public void setup() {
+        sdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder().build())
+                .setLoggerProvider(SdkLoggerProvider.builder()
+                        .addLogRecordProcessor(BatchLogRecordProcessor.builder(new CountingExporter(exported)).build())
+                        .build())
+                .build();
+        OpenTelemetryAppender.install(sdk);
+        span = sdk.getTracer("benchmark").spanBuilder("GET /v1/hello/:name").startSpan();
+        scope = span.makeCurrent();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounts() {
+        sdk.getSdkLoggerProvider().forceFlush().join(10, TimeUnit.SECONDS);
+        exported.set(0);
+        requests = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCounts() {
+        String ringBuffer = LogManager.getContext(false) instanceof AsyncLoggerContext context
+                ? ", ring buffer free: " + context.createRingBufferAdmin().getRemainingCapacity()
+                : "";
+        sdk.getSdkLoggerProvider().forceFlush().join(10, TimeUnit.SECONDS);
+        if (requests > 0) {
+            System.out.printf(Locale.ROOT, "logs exported per request: %.2f%s%n", (double) exported.get() / requests, ringBuffer);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        scope.close();
+        span.end();
+        sdk.close();
+    }
+
+    @Benchmark
+    public void work() {
+        Blackhole.consumeCPU(work);
+    }
+
+    @Benchmark
+    public void sync() {
+        requests++;
+        logRequest();
+        Blackhole.consumeCPU(work);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Dlog4j2.configurationFile=log4j2-benchmark.xml", "-Dbenchmark.location=false"})
+    public void syncWithoutLocation() {
+        requests++;
+        logRequest();
+        Blackhole.consumeCPU(work);
+    }
+
+    @Benchmark
+    public void syncUnsampled() {
+        requests++;
+        SpanContext unsampled = SpanContext.create(ids.generateTraceId(), ids.generateSpanId(),
+                TraceFlags.getDefault(), TraceState.getDefault());
+        try (Scope __ = Span.wrap(unsampled).makeCurrent()) {
+            logRequest();
+        }
+        Blackhole.consumeCPU(work);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {
+            "-Dlog4j2.configurationFile=log4j2-benchmark.xml",
+            "-Dlog4j2.contextSelector=org.apache.logging.log4j.core.async.AsyncLoggerContextSelector"})
+    public void async() {
+        requests++;
+        logRequest();
+        Blackhole.consumeCPU(work);
+    }
+
+    // What HelloWorldController, DbOperations and RemoteClient log per request.
+    private static void logRequest() {
+        String name = "alpha";
+        logger.atInfo().addKeyValue("user.name", name).log("Request received for user {}", name);
+        logger.atInfo().addKeyValue("user.name", name).log("Find user by name");
+        logger.atInfo().addKeyValue("user.name", name).log("Request recommendations for user");
+        logger.atInfo().addKeyValue("user.name", name).log("Fetch user details from DB");
+        logger.atInfo().addKeyValue("uri", RECOMMENDATIONS).log("Calling recommendations service");
+        logger.atInfo().log("Injected headers: {}", "traceparent=00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01");
+        logger.atInfo().log("{}", "Found user: alpha <alpha@example.com>");
+        logger.atInfo().log("Recommendations for user {}", "Learn deeper!");
+    }
+
+    private record CountingExporter(AtomicLong exported) implements LogRecordExporter {
+        @Override
+        public CompletableResultCode export(Collection<LogRecordData> logs) {
+            exported.addAndGet(logs.size());
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
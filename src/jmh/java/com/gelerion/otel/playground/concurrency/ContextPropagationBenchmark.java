@@ -0,0 +1,129 @@
+package com.gelerion.otel.playground.concurrency;
+
+import com.gelerion.otel.playground.config.otel.TelemetryHandles;
+import com.gelerion.otel.playground.feature.flags.FeatureFlag;
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import org.apache.logging.log4j.ThreadContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+What carrying the request context over to a task costs, per task, with a span, a feature flag and (with mdc=request)
+the MDC's request_id current on the submitting thread:
+  - baseline:         the task alone,
+  - otelContextWrap:  Context.current().wrap(task), the OTel Context only (span and feature flag, no MDC),
+  - snapshotWrap:     RequestContextSnapshot.capture().wrap(task),
+  - executor:         ContextPropagatingExecutorService.execute, including the queue wait and run time histograms.
+Everything runs on the benchmark thread (the executor runs tasks in the caller), so the thread switch itself isn't
+measured. That thread has the request's MDC, which the snapshot saves and puts back; a fresh worker thread has none,
+and skips that copy.
+  make bench bench=ContextPropagationBenchmark
+ */
+@State(org.openjdk.jmh.annotations.Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextPropagationBenchmark {
+
+    @Param({"empty", "request"})
+    public String mdc;
+
+    private OpenTelemetrySdk sdk;
+    private Span span;
+    private Scope scope;
+    private ContextPropagatingExecutorService executor;
+    private Runnable task;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        sdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder().build())
+                .setMeterProvider(SdkMeterProvider.builder()
+                        .registerMetricReader(InMemoryMetricReader.create())
+                        .build())
+                .build();
+        TelemetryHandles.install(sdk);
+        executor = new ContextPropagatingExecutorService("benchmark", new CallerRunsExecutorService(), new MetricsProvider());
+
+        span = TelemetryHandles.tracer().spanBuilder("GET /v1/hello/:name").startSpan();
+        scope = Context.current().with(span).with(FeatureFlag.fromHeader("high-latency")).makeCurrent();
+        if (mdc.equals("request")) {
+            ThreadContext.put("request_id", "a5b49dca-4b81-4284-af24-07361b09986c");
+        }
+        // Reads what a task would read.
+        task = () -> blackhole.consume(Span.current());
+    }
+
+    @TearDown
+    public void tearDown() {
+        scope.close();
+        span.end();
+        ThreadContext.clearAll();
+        sdk.close();
+    }
+
+    @Benchmark
+    public void baseline() {
+        task.run();
+    }
+
+    @Benchmark
+    public void otelContextWrap() {
+        Context.current().wrap(task).run();
+    }
+
+    @Benchmark
+    public void snapshotWrap() {
+        RequestContextSnapshot.capture().wrap(task).run();
+    }
+
+    @Benchmark
+    public void executor() {
+        executor.execute(task);
+    }
+
+    // Runs each task on the calling thread.
+    private static final class CallerRunsExecutorService extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.gelerion.otel.playground.config.otel;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Explicit (the seconds buckets from MetricViewConfig) versus base-2 exponential (160 buckets) histograms:
+  - record:               the cost of one recording into an existing series,
+  - createSeries:         allocation of a new series with a few recordings; run with `-prof gc`, gc.alloc.rate.norm
+                          is then roughly the memory one series keeps (its state is allocated once and retained).
+                          Each invocation gets an empty provider from FreshProvider, built and closed around it
+                          (Level.Invocation is fine here: one invocation records 1600 values into 100 new series),
+  - collectAndMarshal:    collecting SERIES series and encoding them as an OTLP request; the request size is printed
+                          once per trial ("payload: ...").
+Latencies are log-uniform between 0.5ms and 5s, which is roughly what the DB and recommendation calls produce.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistogramAggregationBenchmark {
+    private static final int SERIES = 100;
+    private static final int VALUES = 4096;
+    private static final AttributeKey<String> SERIES_KEY = AttributeKey.stringKey("series");
+
+    @Param({"explicit", "exponential"})
+    public String aggregation;
+
+    private final double[] values = new double[VALUES];
+    private final Attributes[] series = new Attributes[SERIES];
+    private int next;
+
+    private SdkMeterProvider meterProvider;
+    private InMemoryMetricReader reader;
+    private DoubleHistogram histogram;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < VALUES; i++) {
+            values[i] = 0.0005 * Math.pow(10_000, random.nextDouble());
+        }
+        for (int i = 0; i < SERIES; i++) {
+            series[i] = Attributes.of(SERIES_KEY, "series-" + i);
+        }
+
+        reader = reader(aggregation);
+        meterProvider = SdkMeterProvider.builder().registerMetricReader(reader).build();
+        histogram = histogram(meterProvider);
+        for (int i = 0; i < SERIES * 1000; i++) {
+            histogram.record(values[i & (VALUES - 1)], series[i % SERIES]);
+        }
+        int bytes = MetricsRequestMarshaler.create(reader.collectAllMetrics()).getBinarySerializedSize();
+        System.out.printf("%npayload: %s, %d series, %d bytes (%d bytes/series)%n",
+                aggregation, SERIES, bytes, bytes / SERIES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        meterProvider.close();
+    }
+
+    @Benchmark
+    public void record() {
+        histogram.record(values[next++ & (VALUES - 1)], series[0]);
+    }
+
+    @State(Scope.Thread)
+    public static class FreshProvider {
+        private SdkMeterProvider meterProvider;
+        private DoubleHistogram histogram;
+
+        @Setup(Level.Invocation)
+        public void setup(HistogramAggregationBenchmark benchmark) {
+            meterProvider = SdkMeterProvider.builder().registerMetricReader(reader(benchmark.aggregation)).build();
+            histogram = histogram(meterProvider);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            meterProvider.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SERIES)
+    public DoubleHistogram createSeries(FreshProvider fresh) {
+        for (int i = 0; i < SERIES; i++) {
+            for (int v = 0; v < 16; v++) {
+                fresh.histogram.record(values[(i * 16 + v) & (VALUES - 1)], series[i]);
+            }
+        }
+        return fresh.histogram;
+    }
+
+    @Benchmark
+    public int collectAndMarshal() {
+        return MetricsRequestMarshaler.create(reader.collectAllMetrics()).getBinarySerializedSize();
+    }
+
+    private static InMemoryMetricReader reader(String aggregation) {
+        Aggregation histogramAggregation = switch (aggregation) {
+            case "explicit" -> Aggregation.explicitBucketHistogram(MetricViewConfig.SECONDS_BUCKETS);
+            case "exponential" -> Aggregation.base2ExponentialBucketHistogram(160, 20);
+            default -> throw new IllegalArgumentException(aggregation);
+        };
+        return InMemoryMetricReader.builder()
+                .setDefaultAggregationSelector(
+                        DefaultAggregationSelector.getDefault().with(InstrumentType.HISTOGRAM, histogramAggregation))
+                .build();
+    }
+
+    private static DoubleHistogram histogram(SdkMeterProvider provider) {
+        return provider.get("benchmark").histogramBuilder("db.client.operation.duration").setUnit("s").build();
+    }
+}
@@ -0,0 +1,142 @@
+package com.gelerion.otel.playground.config.otel;
+
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.exporter.prometheus.PrometheusHttpServer;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
+import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+The cost of getting the metrics out once, push versus pull:
+  - push:                  PeriodicMetricReader collect, OTLP protobuf, HTTP POST to a local sink (body discarded),
+  - scrapeOpenMetrics:     HTTP GET /metrics from PrometheusHttpServer in the OpenMetrics format (with exemplars),
+  - scrapePrometheusText:  the same in the classic Prometheus text format.
+Both sides go over loopback, so serialization and HTTP are included, the network is not.
+Run with `-prof gc`: gc.alloc.rate.norm includes the allocations of all threads (the exporter's sender, the scrape
+handler), so it is the full cost of one push or scrape; time/op is close to the CPU time of one request.
+Multiply by the rate: one push per export interval (5s), one scrape per scrape_interval (15s) per Prometheus replica.
+The payload sizes are printed once per trial ("payload: ...").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricExportPathBenchmark {
+    private static final AttributeKey<String> ROUTE = AttributeKey.stringKey("http.route");
+    private static final AttributeKey<Long> STATUS = AttributeKey.longKey("http.response.status_code");
+    private static final String OPEN_METRICS = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Attribute sets per instrument (routes x 4 status codes).
+    @Param({"40", "1000"})
+    public int series;
+
+    private HttpServer sink;
+    private final AtomicLong lastPushBytes = new AtomicLong();
+    private SdkMeterProvider meterProvider;
+    private MetricReader pushReader;
+    private HttpClient client;
+    private HttpRequest openMetricsScrape;
+    private HttpRequest prometheusTextScrape;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        // Stands in for the Collector's OTLP/HTTP receiver.
+        sink = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        sink.createContext("/v1/metrics", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                lastPushBytes.set(body.transferTo(OutputStream.nullOutputStream()));
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        sink.start();
+
+        int scrapePort = freePort();
+        // Pushes only when forceFlush() is called.
+        pushReader = PeriodicMetricReader.builder(OtlpHttpMetricExporter.builder()
+                        .setEndpoint("http://localhost:" + sink.getAddress().getPort() + "/v1/metrics")
+                        .build())
+                .setInterval(Duration.ofHours(1))
+                .build();
+        meterProvider = SdkMeterProvider.builder()
+                .registerMetricReader(pushReader)
+                .registerMetricReader(PrometheusHttpServer.builder().setHost("localhost").setPort(scrapePort).build())
+                .build();
+        populate(meterProvider.get("benchmark"));
+
+        client = HttpClient.newHttpClient();
+        URI scrapeUri = URI.create("http://localhost:" + scrapePort + "/metrics");
+        openMetricsScrape = HttpRequest.newBuilder(scrapeUri).header("Accept", OPEN_METRICS).build();
+        prometheusTextScrape = HttpRequest.newBuilder(scrapeUri).header("Accept", PROMETHEUS_TEXT).build();
+
+        push();
+        System.out.printf("%npayload: %d series, push %d bytes, OpenMetrics %d bytes, Prometheus text %d bytes%n",
+                series, lastPushBytes.get(), scrapeOpenMetrics(), scrapePrometheusText());
+    }
+
+    @TearDown
+    public void tearDown() {
+        meterProvider.close();
+        sink.stop(0);
+    }
+
+    @Benchmark
+    public void push() {
+        if (!pushReader.forceFlush().join(10, TimeUnit.SECONDS).isSuccess()) {
+            throw new IllegalStateException("Push failed");
+        }
+    }
+
+    @Benchmark
+    public int scrapeOpenMetrics() throws IOException, InterruptedException {
+        return client.send(openMetricsScrape, HttpResponse.BodyHandlers.ofByteArray()).body().length;
+    }
+
+    @Benchmark
+    public int scrapePrometheusText() throws IOException, InterruptedException {
+        return client.send(prometheusTextScrape, HttpResponse.BodyHandlers.ofByteArray()).body().length;
+    }
+
+    // Roughly what the app has: a duration histogram and a request counter per route and status code.
+    private void populate(Meter meter) {
+        DoubleHistogram duration = meter.histogramBuilder("http.server.request.duration").setUnit("s").build();
+        LongCounter requests = meter.counterBuilder("http.server.requests").build();
+        long[] statuses = {200, 404, 500, 503};
+        for (int i = 0; i < series; i++) {
+            Attributes attributes = Attributes.of(ROUTE, "/v1/route-" + i / statuses.length, STATUS, statuses[i % statuses.length]);
+            for (int v = 1; v <= 20; v++) {
+                duration.record(v * 0.05, attributes);
+            }
+            requests.add(20, attributes);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.gelerion.otel.playground.config.otel;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import io.opentelemetry.sdk.resources.Resource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+Soak test for the metric pipeline (SdkMeterProviderConfig with MetricReaderConfig/MetricViewConfig, exporting into a
+discarding exporter every 5s). Every recording uses a new attribute set, as if a user ID had slipped into a label,
+and after each export the heap (after a full GC), the exported series and the overflow count are printed.
+
+  make soak temporality=cumulative            # series pinned at the limit, everything new goes to overflow
+  make soak temporality=delta                 # ~1500 series per interval, below the limit: no overflow
+  make soak temporality=cumulative limit=200000 rate=5000   # what "unlimited" cumulative state costs
+
+Settings: -Dsoak.duration (default 2m), -Dsoak.rate new attribute sets per second (default 300), plus the usual
+-Dotel.metrics.temporality / -Dotel.metrics.cardinalityLimit / -Dotel.metrics.histogram.
+ */
+public class MetricPipelineSoak {
+    private static final AttributeKey<String> USER_ID = AttributeKey.stringKey("user.id");
+    private static final AttributeKey<String> ROUTE = AttributeKey.stringKey("http.route");
+    private static final String HISTOGRAM = "soak.request.duration";
+
+    public static void main(String[] args) {
+        Duration duration = Duration.parse("PT" + System.getProperty("soak.duration", "2m").toUpperCase(Locale.ROOT));
+        int rate = Integer.getInteger("soak.rate", 300);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        AtomicLong firstHeap = new AtomicLong(-1);
+        AtomicLong lastHeap = new AtomicLong();
+        OverflowDetectingMetricExporter[] exporter = new OverflowDetectingMetricExporter[1];
+        long start = System.nanoTime();
+
+        // Prints once per export, from the reader's thread.
+        MetricExporter reporting = new DiscardingExporter(MetricReaderConfig.fromSystemProperties().temporalitySelector(), () -> {
+            System.gc();
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            firstHeap.compareAndSet(-1, heap);
+            lastHeap.set(heap);
+            long[] series = {0};
+            long[] overflows = {0};
+            exporter[0].forEachSeriesCount((name, count) -> { if (name.equals(HISTOGRAM)) series[0] = count; });
+            exporter[0].forEachOverflow((name, count) -> { if (name.equals(HISTOGRAM)) overflows[0] = count; });
+            System.out.printf(Locale.ROOT, "t=%3ds heap=%6.1f MiB series=%6d overflowed exports=%d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), heap / 1048576.0, series[0], overflows[0]);
+        });
+        exporter[0] = new OverflowDetectingMetricExporter(reporting);
+
+        SdkMeterProvider meterProvider = SdkMeterProviderConfig.create(Resource.empty(),
+                List.of(SdkMeterProviderConfig.periodicMetricReader(exporter[0])));
+        Meter meter = meterProvider.get("soak");
+        LongCounter requests = meter.counterBuilder("soak.requests").build();
+        DoubleHistogram latency = meter.histogramBuilder(HISTOGRAM).setUnit("s").build();
+
+        System.out.printf("temporality=%s, %d new attribute sets/s for %s%n",
+                System.getProperty("otel.metrics.temporality", "cumulative"), rate, duration);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        long next = System.nanoTime();
+        long end = next + duration.toNanos();
+        for (long id = 0; System.nanoTime() < end; id++) {
+            Attributes attributes = Attributes.of(USER_ID, "user-" + id, ROUTE, "/v1/hello/:name");
+            requests.add(1, attributes);
+            latency.record((id % 1000) / 1000.0, attributes);
+
+            next += intervalNanos;
+            long delay = next - System.nanoTime();
+            if (delay > 0) LockSupport.parkNanos(delay);
+        }
+        meterProvider.close();
+        System.out.printf(Locale.ROOT, "heap after first export %.1f MiB, after last %.1f MiB%n",
+                firstHeap.get() / 1048576.0, lastHeap.get() / 1048576.0);
+    }
+
+    private record DiscardingExporter(AggregationTemporalitySelector temporality, Runnable onExport)
+            implements MetricExporter {
+
+        @Override
+        public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+            return temporality.getAggregationTemporality(instrumentType);
+        }
+
+        @Override
+        public CompletableResultCode export(Collection<MetricData> metrics) {
+            onExport.run();
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
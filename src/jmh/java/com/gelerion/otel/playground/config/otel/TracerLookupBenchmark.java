@@ -0,0 +1,66 @@
+package com.gelerion.otel.playground.config.otel;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.semconv.SchemaUrls;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Span creation throughput: looking up the tracer through GlobalOpenTelemetry on every span (what the filter,
+DbOperations and RemoteClient used to do) versus the cached handle from TelemetryHandles.
+Spans are sampled but no processor is registered, so the numbers isolate the lookup + span start/end cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TracerLookupBenchmark {
+    private OpenTelemetrySdk sdk;
+
+    @Setup
+    public void setup() {
+        sdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder().build())
+                .build();
+        GlobalOpenTelemetry.resetForTest();
+        GlobalOpenTelemetry.set(sdk);
+        TelemetryHandles.install(sdk);
+    }
+
+    @TearDown
+    public void tearDown() {
+        GlobalOpenTelemetry.resetForTest();
+        sdk.close();
+    }
+
+    @Benchmark
+    public Span globalLookupPerSpan() {
+        Span span = GlobalOpenTelemetry
+                .tracerBuilder(TelemetryHandles.SCOPE_NAME)
+                .setInstrumentationVersion("1.0.0")
+                .setSchemaUrl(SchemaUrls.V1_37_0)
+                .build()
+                .spanBuilder("DB SELECT users")
+                .setSpanKind(SpanKind.CLIENT)
+                .startSpan();
+        span.end();
+        return span;
+    }
+
+    @Benchmark
+    public Span cachedTracer() {
+        Span span = TelemetryHandles.tracer()
+                .spanBuilder("DB SELECT users")
+                .setSpanKind(SpanKind.CLIENT)
+                .startSpan();
+        span.end();
+        return span;
+    }
+}
@@ -0,0 +1,80 @@
+package com.gelerion.otel.playground.controller;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.gelerion.otel.playground.Server.JSON;
+
+/*
+Serializing the /v1/hello response body into the bytes Spark writes out:
+  - objectMapper:  JSON.writeValueAsString(Map.of(...)), then String.getBytes(UTF-8) as Spark's DefaultSerializer does,
+  - writer:        HelloResponseWriter (reused generator, pre-encoded field names, byte[] straight away).
+  - ascii:    what the app returns today,
+  - escaped:  quotes, a tab and non-ASCII characters, which take the generator's escaping path.
+Setup fails if the writer's bytes differ from ObjectMapper's for the same fields in the same order, also on reuse.
+  make bench bench=HelloResponseBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HelloResponseBenchmark {
+
+    @Param({"ascii", "escaped"})
+    public String body;
+
+    private String message;
+    private String user;
+    private String recommendations;
+
+    @Setup
+    public void setup() throws IOException {
+        switch (body) {
+            case "ascii" -> {
+                message = "Hello, alpha!";
+                user = "Found user: alpha <alpha@example.com>";
+                recommendations = "Learn deeper!";
+            }
+            case "escaped" -> {
+                message = "Hello, \"Zoë\"\t!";
+                user = "Found user: Zoë Ångström <zoë@example.com>";
+                recommendations = "Lerne tiefer — 深く学ぶ! \\o/";
+            }
+            default -> throw new IllegalArgumentException(body);
+        }
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("message", message);
+        fields.put("user", user);
+        fields.put("recommendations", recommendations);
+        byte[] expected = JSON.writeValueAsString(fields).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 3; i++) {
+            byte[] actual = writer();
+            if (!Arrays.equals(expected, actual)) {
+                throw new IllegalStateException("Output differs from ObjectMapper's: "
+                        + new String(actual, StandardCharsets.UTF_8) + " vs " + new String(expected, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] objectMapper() throws IOException {
+        return JSON.writeValueAsString(Map.of(
+                "message", message,
+                "user", user,
+                "recommendations", recommendations)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] writer() throws IOException {
+        return HelloResponseWriter.write(message, user, recommendations);
+    }
+}
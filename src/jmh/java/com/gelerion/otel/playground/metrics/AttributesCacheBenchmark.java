@@ -0,0 +1,69 @@
+package com.gelerion.otel.playground.metrics;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.testing.exporter.InMemoryMetricReader;
+import io.opentelemetry.semconv.HttpAttributes;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Compares the per-request cost of recording http.server.request.duration with attributes built on every call
+(what the filters used to do) against the interned attributes from HttpServerAttributesCache.
+Run with `-prof gc` and compare gc.alloc.rate.norm (bytes/op): the cached variants should report ~0 B/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttributesCacheBenchmark {
+    private static final String METHOD = "GET";
+    private static final String ROUTE = "/v1/hello/:name";
+    private static final int STATUS = 200;
+
+    private SdkMeterProvider meterProvider;
+    private DoubleHistogram histogram;
+    private HttpServerAttributesCache cache;
+
+    @Setup
+    public void setup() {
+        meterProvider = SdkMeterProvider.builder()
+                .registerMetricReader(InMemoryMetricReader.create())
+                .build();
+        histogram = meterProvider.get("benchmark").histogramBuilder("http.server.request.duration").build();
+        cache = new HttpServerAttributesCache();
+    }
+
+    @TearDown
+    public void tearDown() {
+        meterProvider.close();
+    }
+
+    @Benchmark
+    public Attributes buildAttributes() {
+        return Attributes.builder()
+                .put(HttpAttributes.HTTP_REQUEST_METHOD, METHOD)
+                .put(HttpAttributes.HTTP_ROUTE, ROUTE)
+                .put(HttpAttributes.HTTP_RESPONSE_STATUS_CODE, STATUS)
+                .build();
+    }
+
+    @Benchmark
+    public Attributes cachedAttributes() {
+        return cache.get(METHOD, ROUTE, STATUS);
+    }
+
+    @Benchmark
+    public void recordWithBuiltAttributes() {
+        histogram.record(0.25, buildAttributes());
+    }
+
+    @Benchmark
+    public void recordWithCachedAttributes() {
+        histogram.record(0.25, cache.get(METHOD, ROUTE, STATUS));
+    }
+}
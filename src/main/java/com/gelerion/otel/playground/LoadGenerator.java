@@ -1,16 +1,47 @@
 package com.gelerion.otel.playground;
 
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+An open-loop load generator: requests are scheduled at a target rate, whether or not earlier ones have completed.
+A closed loop (send, wait, send) slows down together with the server, so it hides exactly the latency we want to see.
+
+Latency is measured from the *intended* send time, not from the moment the request actually left. If the generator
+falls behind (or waits for the concurrency ceiling), that delay is part of the measured latency instead of
+silently disappearing (the "coordinated omission" problem).
 
+Usage (all settings are optional system properties):
+  make load mode=high-latency rps=50 stages=10@30s,100@2m,100@5m
+    args[0]              X-Feature-Flag header value (default: baseline)
+    -Dload.rps           constant target rate, used when no stages are given (default: 1)
+    -Dload.stages        comma-separated <rps>@<duration> stages; each ramps linearly from the previous rate
+    -Dload.concurrency   maximum in-flight requests (default: 512)
+    -Dload.interval      report interval, e.g. 5s (default: 5s)
+    -Dload.summary       summary file written at the end (default: load-summary.txt)
+    -Dload.url           base URL (default: http://localhost:8080/v1/hello)
+ */
 public class LoadGenerator {
 
     // Deterministic weighted sequence to favor one endpoint over the others.
@@ -20,12 +51,57 @@ public class LoadGenerator {
             "beta",  "beta",
             "gamma"
     );
-    private static final String BASE_URL = "http://localhost:8080/v1/hello";
+    private static final String BASE_URL = System.getProperty("load.url", "http://localhost:8080/v1/hello");
     private static final HttpClient client = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(5))
             .build();
+    // Latencies are recorded in microseconds; up to one hour with 3 significant digits.
+    private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+
     private static int sequenceIndex = 0;
 
+    private final String featureFlag;
+    private final List<Stage> stages;
+    private final Semaphore inFlight;
+    private final int concurrency;
+    private final Duration reportInterval;
+    private final Path summaryFile;
+
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final Histogram total = new Histogram(MAX_LATENCY_MICROS, 3);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final Instant startedAt = Instant.now();
+
+    // A stage ramps linearly from the previous stage's rate (or 0) to targetRps over its duration.
+    // An open-ended run is a single stage without a duration.
+    private record Stage(double targetRps, Duration duration) {
+        // <rps>@<duration>, e.g. 100@2m.
+        static Stage parse(String spec) {
+            String[] parts = spec.trim().split("@");
+            if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                throw new IllegalArgumentException("Bad load stage '" + spec.trim() + "': expected <rps>@<duration>, e.g. 100@2m");
+            }
+            try {
+                return new Stage(Double.parseDouble(parts[0]), parseDuration(parts[1]));
+            } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Bad load stage '" + spec.trim() + "': expected <rps>@<duration>, e.g. 100@2m", e);
+            }
+        }
+    }
+
+    private LoadGenerator(String featureFlag, List<Stage> stages, int concurrency, Duration reportInterval, Path summaryFile) {
+        this.featureFlag = featureFlag;
+        this.stages = stages;
+        this.concurrency = concurrency;
+        this.inFlight = new Semaphore(concurrency);
+        this.reportInterval = reportInterval;
+        this.summaryFile = summaryFile;
+    }
+
     private static String nextName() {
         String name = WEIGHTED_SEQUENCE.get(sequenceIndex);
         sequenceIndex = (sequenceIndex + 1) % WEIGHTED_SEQUENCE.size();
@@ -34,44 +110,180 @@ public class LoadGenerator {
 
     public static void main(String[] args) throws InterruptedException {
         // Optional: Get feature flag from command line args
-        String featureFlag = args.length > 0 ? args[0] : null;
-        
+        String featureFlag = args.length > 0 && !args[0].isBlank() ? args[0] : null;
+
+        List<Stage> stages = new ArrayList<>();
+        String stagesSpec = System.getProperty("load.stages", "");
+        for (String stage : stagesSpec.split(",")) {
+            if (!stage.isBlank()) stages.add(Stage.parse(stage));
+        }
+        if (stages.isEmpty()) {
+            double rps = Double.parseDouble(System.getProperty("load.rps", "1"));
+            stages.add(new Stage(rps, null));
+        }
+
+        var generator = new LoadGenerator(
+                featureFlag,
+                stages,
+                Integer.parseInt(System.getProperty("load.concurrency", "512")),
+                parseDuration(System.getProperty("load.interval", "5s")),
+                Path.of(System.getProperty("load.summary", "load-summary.txt")));
+
         System.out.println("Starting load generator...");
-        if (featureFlag != null && !featureFlag.isBlank()) {
+        if (featureFlag != null) {
             System.out.println("Using feature flag: " + featureFlag);
         } else {
             System.out.println("Using baseline feature flag (default)");
         }
+        System.out.println("Stages: " + stages + ", max in-flight: " + generator.concurrency);
+
+        // Ctrl+C still produces the summary.
+        Runtime.getRuntime().addShutdownHook(new Thread(generator::finish));
+        generator.run();
+    }
+
+    private void run() throws InterruptedException {
+        Thread reporter = Thread.ofPlatform().daemon().name("load-reporter").start(this::reportPeriodically);
 
-        ExecutorService executor = Executors.newFixedThreadPool(3);
+        long stageStart = System.nanoTime();
+        double previousRps = 0;
+        for (Stage stage : stages) {
+            boolean openEnded = stage.duration() == null;
+            double fromRps = openEnded ? stage.targetRps() : previousRps;
+            double seconds = openEnded ? Double.POSITIVE_INFINITY : stage.duration().toNanos() / 1e9;
 
-        while (true) {
-            String name = nextName();
-            String url = BASE_URL + "/" + name;
+            for (long k = 0; ; k++) {
+                double offset = sendOffsetSeconds(k, fromRps, stage.targetRps(), seconds);
+                if (Double.isNaN(offset) || offset >= seconds) break;
+                long intended = stageStart + (long) (offset * 1e9);
 
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .GET();
+                // Waits for the intended send time. If we are already late, it fires immediately (catches up).
+                long delay;
+                while ((delay = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
 
-            // Add feature flag header if specified
-            if (featureFlag != null && !featureFlag.isBlank()) {
-                requestBuilder.header("X-Feature-Flag", featureFlag);
+                // Blocks at the concurrency ceiling; the wait counts toward latency since we measure from 'intended'.
+                inFlight.acquire();
+                send(intended);
             }
+            previousRps = stage.targetRps();
+            stageStart += (long) (seconds * 1e9);
+        }
+
+        // Drains in-flight requests before the final report.
+        inFlight.tryAcquire(concurrency, 30, TimeUnit.SECONDS);
+        reporter.interrupt();
+        finish();
+    }
 
-            HttpRequest request = requestBuilder.build();
+    // When the k-th request of a stage is due. With a linear ramp from r0 to r1 over T seconds, the number of requests
+    // sent by time t is N(t) = r0*t + (r1 - r0)*t^2/(2T); solving N(t) = k spaces the requests exactly along the ramp.
+    private static double sendOffsetSeconds(long k, double r0, double r1, double seconds) {
+        if (r0 == r1) {
+            return r0 > 0 ? k / r0 : Double.NaN;
+        }
+        double a = (r1 - r0) / (2 * seconds);
+        double discriminant = r0 * r0 + 4 * a * k;
+        return discriminant < 0 ? Double.NaN : (-r0 + Math.sqrt(discriminant)) / (2 * a);
+    }
 
-            CompletableFuture<Void> future = client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                    .thenApply(HttpResponse::statusCode)
-                    .thenAccept(statusCode -> System.out.println("Sent request to " + url + ", got status code: " + statusCode))
-                    .exceptionally(ex -> {
-                        System.err.println("Failed to send request to " + url + ": " + ex.getMessage());
-                        return null;
-                    });
+    private void send(long intendedNanos) {
+        String name = nextName();
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(BASE_URL + "/" + name))
+                .timeout(Duration.ofSeconds(30))
+                .GET();
 
-            executor.submit(future::join);
+        // Add feature flag header if specified
+        if (featureFlag != null) {
+            requestBuilder.header("X-Feature-Flag", featureFlag);
+        }
+        HttpRequest request = requestBuilder.build();
 
-            // Wait for a pseudo-random delay between 500ms and 1500ms
-            TimeUnit.MILLISECONDS.sleep(500 + (int) (Math.random() * 1000));
+        senders.execute(() -> {
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 500) serverErrors.increment();
+                else succeeded.increment();
+            } catch (IOException | InterruptedException e) {
+                failed.increment();
+            } finally {
+                long micros = (System.nanoTime() - intendedNanos) / 1_000;
+                recorder.recordValue(Math.min(micros, MAX_LATENCY_MICROS));
+                inFlight.release();
+            }
+        });
+    }
+
+    private void reportPeriodically() {
+        Histogram interval = null;
+        long lastReport = System.nanoTime();
+        while (!finished.get()) {
+            try {
+                Thread.sleep(reportInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+            interval = recorder.getIntervalHistogram(interval);
+            long now = System.nanoTime();
+            synchronized (total) {
+                total.add(interval);
+            }
+            double seconds = (now - lastReport) / 1e9;
+            lastReport = now;
+            System.out.printf(Locale.ROOT, "%s rps=%.1f in-flight=%d %s%n",
+                    Instant.now(), interval.getTotalCount() / seconds, concurrency - inFlight.availablePermits(),
+                    percentiles(interval));
         }
     }
+
+    private void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        Histogram summary;
+        synchronized (total) {
+            total.add(recorder.getIntervalHistogram());
+            summary = total.copy();
+        }
+        String outcome = String.format(Locale.ROOT, "requests=%d ok=%d 5xx=%d failed=%d",
+                summary.getTotalCount(), succeeded.sum(), serverErrors.sum(), failed.sum());
+        System.out.println("Total: " + outcome + " " + percentiles(summary));
+
+        try (PrintStream out = new PrintStream(Files.newOutputStream(summaryFile))) {
+            out.println("Started: " + startedAt + ", finished: " + Instant.now());
+            out.println("Feature flag: " + (featureFlag != null ? featureFlag : "baseline") + ", stages: " + stages);
+            out.println(outcome);
+            out.println(percentiles(summary));
+            out.println();
+            out.println("Latency distribution (ms, measured from the intended send time):");
+            summary.outputPercentileDistribution(out, 1000.0);
+            System.out.println("Summary written to " + summaryFile.toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Failed to write the summary: " + e.getMessage());
+        }
+    }
+
+    private static String percentiles(Histogram h) {
+        return String.format(Locale.ROOT, "p50=%.1fms p90=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms",
+                h.getValueAtPercentile(50) / 1000.0,
+                h.getValueAtPercentile(90) / 1000.0,
+                h.getValueAtPercentile(99) / 1000.0,
+                h.getValueAtPercentile(99.9) / 1000.0,
+                h.getMaxValue() / 1000.0);
+    }
+
+    // Accepts 500ms, 30s, 5m, 1h.
+    private static Duration parseDuration(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        if (v.endsWith("ms")) return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2)));
+        long amount = Long.parseLong(v.substring(0, v.length() - 1));
+        return switch (v.charAt(v.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            case 'h' -> Duration.ofHours(amount);
+            default -> throw new IllegalArgumentException("Unsupported duration: " + value);
+        };
+    }
 }
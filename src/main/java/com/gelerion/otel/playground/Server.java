@@ -3,15 +3,30 @@ package com.gelerion.otel.playground;
 import static spark.Spark.*;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gelerion.otel.playground.clients.RemoteClientConfig;
+import com.gelerion.otel.playground.clients.StubRecommendationsServer;
 import com.gelerion.otel.playground.config.otel.SdkOtelConfig;
+import com.gelerion.otel.playground.config.server.JettyServerConfig;
+import com.gelerion.otel.playground.config.server.ThreadingMode;
+import com.gelerion.otel.playground.controller.AdminController;
 import com.gelerion.otel.playground.controller.HelloWorldController;
-import com.gelerion.otel.playground.feature.flags.FeatureFlag;
+import com.gelerion.otel.playground.feature.flags.FeatureFlagProfiles;
+import com.gelerion.otel.playground.filters.after.ConcurrencyLimitReleaseFilter;
 import com.gelerion.otel.playground.filters.after.MetricsRecorderAfterFilter;
+import com.gelerion.otel.playground.filters.before.ConcurrencyLimitBeforeFilter;
 import com.gelerion.otel.playground.filters.before.FeatureFlagBeforeFilter;
 import com.gelerion.otel.playground.filters.before.LoggingTraceContextSetterBeforeFilter;
 import com.gelerion.otel.playground.filters.before.MetricsRecorderBeforeFilter;
 import com.gelerion.otel.playground.filters.before.OtelContextPropagationBeforeFilter;
+import com.gelerion.otel.playground.limits.ConcurrencyLimitConfig;
+import com.gelerion.otel.playground.limits.ConcurrencyLimits;
 import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.repository.ConnectionPool;
+import com.gelerion.otel.playground.repository.ConnectionPoolConfig;
+import com.gelerion.otel.playground.repository.UsersSchema;
+import com.gelerion.otel.playground.routing.RouteRegistry;
+import com.gelerion.otel.playground.sampling.RateLimitingSampler;
+import com.gelerion.otel.playground.spool.Spool;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Scope;
 import org.apache.logging.log4j.ThreadContext;
@@ -19,52 +34,107 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Filter;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.sql.SQLException;
 import java.util.Optional;
 
 public class Server {
     private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
     public static final ObjectMapper JSON = new ObjectMapper();
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws SQLException, InterruptedException, IOException {
         // Manually init OTEL
         SdkOtelConfig.init();
 
-        log.atInfo().log("Starting server on port 8080");
-        start();
+        ThreadingMode threadingMode = ThreadingMode.fromEnvironment();
+        log.atInfo().addKeyValue("thread.pool.mode", threadingMode).log("Starting server on port 8080");
+        start(threadingMode);
     }
 
-    public static void start() {
+    public static void start(ThreadingMode threadingMode) throws SQLException, InterruptedException, IOException {
         port(8080);
 
         MetricsProvider metricsProvider = new MetricsProvider();
+        metricsProvider.observeSpools(Spool.opened());
 
-        // setup Span, MDC context, and feature flags
-        before(new FeatureFlagBeforeFilter(),
-               new OtelContextPropagationBeforeFilter(),
-               new LoggingTraceContextSetterBeforeFilter(),
-               new MetricsRecorderBeforeFilter(metricsProvider));
+        // Platform (bounded Jetty pool) or virtual threads; must happen before the first route/filter is mapped.
+        JettyServerConfig.configure(threadingMode, metricsProvider);
 
-        var helloWorldController = new HelloWorldController(metricsProvider);
-        get("/v1/hello/:name", helloWorldController::hello);
+        // Embedded H2 database behind a bounded connection pool.
+        ConnectionPool connectionPool = new ConnectionPool(ConnectionPoolConfig.fromSystemProperties(), metricsProvider);
+        UsersSchema.init(connectionPool);
+
+        // Resolves raw paths to the declared route templates (for span names and the http.route label).
+        RouteRegistry routes = new RouteRegistry();
+
+        // Feature flag profiles, reloaded when -Dfeature.flags.file changes.
+        FeatureFlagProfiles.watch();
+
+        // setup Span, feature flags, and MDC context
+        before(new OtelContextPropagationBeforeFilter(routes),
+               new FeatureFlagBeforeFilter(),
+               new LoggingTraceContextSetterBeforeFilter());
+
+        // Optional: sheds load above an adaptive per-route concurrency limit (-Dserver.limiter=gradient|aimd).
+        ConcurrencyLimitConfig limitConfig = ConcurrencyLimitConfig.fromSystemProperties();
+        if (limitConfig.enabled()) {
+            ConcurrencyLimits limits = new ConcurrencyLimits(limitConfig);
+            metricsProvider.observeConcurrencyLimits(limits);
+            before(new ConcurrencyLimitBeforeFilter(limits, metricsProvider, routes));
+            afterAfter(new ConcurrencyLimitReleaseFilter());
+            log.atInfo().addKeyValue("server.limiter", limitConfig.type()).log("Concurrency limiting enabled");
+        }
+
+        before(new MetricsRecorderBeforeFilter(metricsProvider, routes));
+
+        // The recommendations service, in-process unless recommendations.url points elsewhere.
+        RemoteClientConfig recommendationsConfig = RemoteClientConfig.fromSystemProperties();
+        if (recommendationsConfig.embeddedStub()) {
+            StubRecommendationsServer.start(recommendationsConfig.port());
+            log.atInfo().addKeyValue("recommendations.url", recommendationsConfig.baseUri())
+                    .log("Started the stub recommendations service");
+        }
+
+        var helloWorldController = new HelloWorldController(metricsProvider, connectionPool, recommendationsConfig);
+        routes.get("/v1/hello/:name", helloWorldController::hello);
+
+        // The sampler exists only if the SDK was initialized (SdkOtelConfig.init()).
+        RateLimitingSampler sampler = SdkOtelConfig.sampler();
+        if (sampler != null) {
+            metricsProvider.observeSampler(sampler);
+            var adminController = new AdminController(sampler);
+            routes.get("/admin/sampling", adminController::samplingRate);
+            routes.post("/admin/sampling", adminController::updateSamplingRate);
+        }
+        if (SdkOtelConfig.tailSampler() != null) {
+            metricsProvider.observeTailSampling(SdkOtelConfig.tailSampler());
+        }
+        if (SdkOtelConfig.metricExporter() != null) {
+            metricsProvider.observeMetricCardinality(SdkOtelConfig.metricExporter());
+        }
+        metricsProvider.observeLogSampling();
 
         // record metrics
-        after(new MetricsRecorderAfterFilter(metricsProvider));
-        exception(Exception.class, new MetricsRecorderAfterFilter(metricsProvider));
+        after(new MetricsRecorderAfterFilter(metricsProvider, routes));
+        exception(Exception.class, new MetricsRecorderAfterFilter(metricsProvider, routes));
 
         afterAfter(cleanupContext());
     }
 
-    private static Filter cleanupContext() {
+    // Package-private so the filter chain benchmark (src/jmh) can measure it.
+    static Filter cleanupContext() {
         return (req, resp) -> {
             resp.type("application/json;charset=utf-8");
 
+            // Scopes close in the reverse order they were opened.
+            Optional.ofNullable(req.<Scope>attribute(FeatureFlagBeforeFilter.FEATURE_FLAG_SCOPE_ATTR))
+                    .ifPresent(Scope::close);
             Optional.ofNullable(req.<Scope>attribute(OtelContextPropagationBeforeFilter.OTEL_SCOPE_ATTR))
                     .ifPresent(Scope::close);
             Optional.ofNullable(req.<Span>attribute(OtelContextPropagationBeforeFilter.OTEL_SERVER_SPAN_ATTR))
                     .ifPresent(Span::end);
             ThreadContext.clearAll();
-            FeatureFlag.clear();
         };
     }
 }
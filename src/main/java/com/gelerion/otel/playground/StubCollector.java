@@ -0,0 +1,105 @@
+package com.gelerion.otel.playground;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+A stand-in for the OpenTelemetry Collector's OTLP/HTTP receiver, for testing the export path (e.g. the disk spool).
+It accepts POST /v1/traces, /v1/metrics and /v1/logs, counts requests and bytes per signal, and discards the data.
+
+It can be paused to simulate a collector outage: while paused, every export gets a 503 (retryable).
+Toggle with Enter on the console, or with POST /control/pause and /control/resume.
+
+Usage:
+  make stub-collector                           # listens on 14318
+  make up spool=true collector=http://localhost:14318
+    -Dstub.port      port to listen on (default: 14318, so it can run next to the real collector on 4318)
+ */
+public class StubCollector {
+    private static final int PORT = Integer.getInteger("stub.port", 14318);
+
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> bytes = new ConcurrentHashMap<>();
+    private final LongAdder refused = new LongAdder();
+
+    public static void main(String[] args) throws IOException {
+        new StubCollector().start();
+    }
+
+    private void start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/", this::export);
+        server.createContext("/control/pause", exchange -> toggle(exchange, true));
+        server.createContext("/control/resume", exchange -> toggle(exchange, false));
+        server.start();
+
+        System.out.println("Stub collector listening on http://localhost:" + PORT + " (press Enter to pause/resume)");
+        Thread.ofPlatform().daemon().name("stub-reporter").start(this::reportPeriodically);
+
+        // Console toggle; the server keeps running once stdin is closed (e.g. when started in the background).
+        InputStream in = System.in;
+        while (in.read() != -1) {
+            if (in.available() == 0) {
+                System.out.println(Instant.now() + (paused.getAndSet(!paused.get()) ? " resumed" : " paused (answering 503)"));
+            }
+        }
+    }
+
+    private void export(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // Always drains the body, otherwise the client can't reuse the connection.
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            if (paused.get()) {
+                refused.increment();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            String signal = exchange.getRequestURI().getPath().substring("/v1/".length());
+            requests.computeIfAbsent(signal, k -> new LongAdder()).increment();
+            bytes.computeIfAbsent(signal, k -> new LongAdder()).add(body.length);
+
+            // An empty Export*ServiceResponse is a valid (zero-length) protobuf message.
+            exchange.getResponseHeaders().add("Content-Type", "application/x-protobuf");
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    private void toggle(HttpExchange exchange, boolean pause) throws IOException {
+        try (exchange) {
+            paused.set(pause);
+            byte[] response = (pause ? "paused\n" : "resumed\n").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+        }
+        System.out.println(Instant.now() + (pause ? " paused (answering 503)" : " resumed"));
+    }
+
+    private void reportPeriodically() {
+        while (true) {
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            StringBuilder line = new StringBuilder(Instant.now().toString()).append(paused.get() ? " [paused]" : "");
+            requests.forEach((signal, count) -> line.append(' ').append(signal).append('=').append(count.sum())
+                    .append(" (").append(bytes.get(signal).sum() / 1024).append(" KiB)"));
+            line.append(" refused=").append(refused.sum());
+            System.out.println(line);
+        }
+    }
+}
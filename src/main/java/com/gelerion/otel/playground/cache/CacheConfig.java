@@ -0,0 +1,32 @@
+package com.gelerion.otel.playground.cache;
+
+import java.time.Duration;
+
+/*
+Settings of one read-through cache. The defaults are given per cache in code; each one can be overridden with
+system properties named after the cache, e.g. for "users":
+  -Dcache.users.maxSize            maximum number of entries (default: per cache)
+  -Dcache.users.ttlMs              how long a successful result is served
+  -Dcache.users.refreshAfterMs     age after which the next read triggers a background reload (refresh-ahead)
+  -Dcache.users.errorTtlMs         how long a failure is served before the backend is asked again (negative caching)
+ */
+public record CacheConfig(String name, long maxSize, Duration ttl, Duration refreshAfter, Duration errorTtl) {
+
+    public CacheConfig {
+        if (maxSize < 1) throw new IllegalArgumentException("cache." + name + ".maxSize must be at least 1");
+        if (refreshAfter.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("cache." + name + ".refreshAfterMs must be shorter than the TTL, " +
+                    "otherwise entries expire before they are ever refreshed");
+        }
+    }
+
+    public static CacheConfig fromSystemProperties(String name, long maxSize, Duration ttl, Duration refreshAfter, Duration errorTtl) {
+        String prefix = "cache." + name + ".";
+        return new CacheConfig(
+                name,
+                Long.getLong(prefix + "maxSize", maxSize),
+                Duration.ofMillis(Long.getLong(prefix + "ttlMs", ttl.toMillis())),
+                Duration.ofMillis(Long.getLong(prefix + "refreshAfterMs", refreshAfter.toMillis())),
+                Duration.ofMillis(Long.getLong(prefix + "errorTtlMs", errorTtl.toMillis())));
+    }
+}
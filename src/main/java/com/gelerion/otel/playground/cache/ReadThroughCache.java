@@ -0,0 +1,233 @@
+package com.gelerion.otel.playground.cache;
+
+import com.gelerion.otel.playground.feature.flags.FeatureFlag;
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.resilience.CallNotPermittedException;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/*
+A read-through cache in front of a slow backend call (Caffeine: size-bounded with W-TinyLFU admission).
+
+- Stampede protection: on a miss, the first caller loads the value on its own thread, so the load runs inside the
+  request's context (CLIENT span parented as usual, MDC, feature flag). Concurrent callers for the same key wait for
+  that load instead of starting their own. If the loading request gives up (it's cancelled, or the call is rejected),
+  its entry is removed and the waiters, which belong to other requests, load the value again themselves.
+- Negative caching: failures (exceptions, or values the isFailure predicate rejects) are cached too, but only for the
+  short errorTtl, so a struggling backend isn't hammered by every request. A call its circuit breaker or bulkhead
+  rejected (CallNotPermittedException) isn't cached: the breaker already keeps the load off, and decides when to retry.
+- Refresh-ahead: once an entry is older than refreshAfter, the next read still gets the cached value and triggers a
+  reload in the background. That reload has no request to belong to, so its spans start a trace of their own (the
+  controller's loaders restore the feature flag from the FlaggedKey). A failed reload keeps the old value until it
+  expires.
+- The ttlOf function can give a key a TTL of its own (null: the configured one). It is asked for the key, not the
+  current request, so a refresh-ahead reload gets the same TTL as the request's load: the controller keeps the values
+  loaded under a FeatureFlag with a cacheTtl for that long.
+- FeatureFlag "no-cache" bypasses the cache entirely, to compare latencies with and without it.
+
+Each lookup adds a "cache.lookup" event to the current span and counts cache.requests{cache.result=hit|miss|bypass}.
+ */
+public class ReadThroughCache<K, V> {
+    private static final AttributeKey<String> CACHE_NAME = AttributeKey.stringKey("cache.name");
+    private static final AttributeKey<String> CACHE_RESULT = AttributeKey.stringKey("cache.result");
+    private static final AttributeKey<String> EVICTION_CAUSE = AttributeKey.stringKey("cache.eviction.cause");
+
+    private static final Executor REFRESH_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("cache-refresh-", 0).factory());
+
+    private final CacheConfig config;
+    private final Function<K, V> loader;
+    private final Predicate<V> isFailure;
+    private final Function<K, Duration> ttlOf;
+    private final MetricsProvider metricsProvider;
+    private final AsyncLoadingCache<K, Result<V>> cache;
+
+    private final Attributes hitAttributes;
+    private final Attributes missAttributes;
+    private final Attributes bypassAttributes;
+    private final Map<RemovalCause, Attributes> evictionAttributes = new EnumMap<>(RemovalCause.class);
+
+    // Either a value or the exception the backend failed with.
+    private record Result<V>(V value, RuntimeException error, boolean failed) {
+        V getOrThrow() {
+            if (error != null) throw error;
+            return value;
+        }
+    }
+
+    public ReadThroughCache(CacheConfig config, MetricsProvider metricsProvider, Function<K, V> loader, Predicate<V> isFailure) {
+        this(config, metricsProvider, loader, isFailure, key -> null);
+    }
+
+    public ReadThroughCache(CacheConfig config, MetricsProvider metricsProvider, Function<K, V> loader, Predicate<V> isFailure,
+                            Function<K, Duration> ttlOf) {
+        this.config = config;
+        this.loader = loader;
+        this.isFailure = isFailure;
+        this.ttlOf = ttlOf;
+        this.metricsProvider = metricsProvider;
+
+        this.hitAttributes = Attributes.of(CACHE_NAME, config.name(), CACHE_RESULT, "hit");
+        this.missAttributes = Attributes.of(CACHE_NAME, config.name(), CACHE_RESULT, "miss");
+        this.bypassAttributes = Attributes.of(CACHE_NAME, config.name(), CACHE_RESULT, "bypass");
+        for (RemovalCause cause : RemovalCause.values()) {
+            evictionAttributes.put(cause, Attributes.of(
+                    CACHE_NAME, config.name(), EVICTION_CAUSE, cause.name().toLowerCase(Locale.ROOT)));
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.maxSize())
+                .expireAfter(new ResultExpiry())
+                .refreshAfterWrite(config.refreshAfter())
+                .executor(REFRESH_EXECUTOR)
+                .evictionListener((K key, Result<V> value, RemovalCause cause) ->
+                        metricsProvider.cacheEvictionsCounter().add(1, evictionAttributes.get(cause)))
+                .buildAsync(new RefreshingLoader());
+    }
+
+    public V get(K key) {
+        if (FeatureFlag.current().cacheBypass()) {
+            recordLookup(bypassAttributes);
+            return loader.apply(key);
+        }
+
+        boolean recorded = false;
+        while (true) {
+            // On a miss, Caffeine installs our (still empty) future and we load the value on this thread below.
+            CompletableFuture<Result<V>> pending = new CompletableFuture<>();
+            CompletableFuture<Result<V>> future = cache.get(key, (k, executor) -> pending);
+            boolean miss = future == pending;
+            if (!recorded) {
+                recordLookup(miss ? missAttributes : hitAttributes);
+                recorded = true;
+            }
+
+            if (miss) {
+                try {
+                    pending.complete(load(key));
+                } catch (RuntimeException | Error e) {
+                    // Not a backend failure, but this request's own (it was cancelled, or the call was rejected): nothing
+                    // is cached, and the waiters from other requests load again rather than share this exception.
+                    cache.asMap().remove(key, pending);
+                    pending.completeExceptionally(LoadAbandonedException.INSTANCE);
+                    throw e;
+                }
+            }
+            try {
+                return await(future).getOrThrow();
+            } catch (LoadAbandonedException e) {
+                // The request loading this key gave up: tries again, as the loader this time or waiting for a new one.
+            }
+        }
+    }
+
+    private void recordLookup(Attributes attributes) {
+        Span.current().addEvent("cache.lookup", attributes);
+        metricsProvider.cacheRequestsCounter().add(1, attributes);
+    }
+
+    // Runs the backend call. A cancelled or rejected call is rethrown rather than cached: it says nothing about the
+    // backend.
+    private Result<V> load(K key) {
+        try {
+            V value = loader.apply(key);
+            return new Result<>(value, null, isFailure.test(value));
+        } catch (CancellationException | CallNotPermittedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return new Result<>(null, e, true);
+        }
+    }
+
+    private Result<V> await(CompletableFuture<Result<V>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Cache lookup cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Successful results live for the TTL (the key's own, if it has one), failures for the (much shorter) error TTL, or
+    // the key's TTL if that is even shorter. Reads don't extend either.
+    private final class ResultExpiry implements Expiry<K, Result<V>> {
+        @Override
+        public long expireAfterCreate(K key, Result<V> result, long currentTime) {
+            Duration keyTtl = ttlOf.apply(key);
+            Duration ttl = keyTtl != null ? keyTtl : config.ttl();
+            return (result.failed() && config.errorTtl().compareTo(ttl) < 0 ? config.errorTtl() : ttl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(K key, Result<V> result, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, result, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(K key, Result<V> result, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    // Used by Caffeine for refresh-ahead reloads, on the refresh executor.
+    private final class RefreshingLoader implements AsyncCacheLoader<K, Result<V>> {
+        @Override
+        public CompletableFuture<Result<V>> asyncLoad(K key, Executor executor) {
+            return CompletableFuture.supplyAsync(() -> load(key), executor);
+        }
+
+        @Override
+        public CompletableFuture<Result<V>> asyncReload(K key, Result<V> oldValue, Executor executor) {
+            CompletableFuture<Result<V>> reload = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    Result<V> reloaded = load(key);
+                    // A failed refresh keeps serving the previous good value (until it expires) rather than
+                    // replacing it. Cancelling the reload is how Caffeine is told so, without a logged warning.
+                    if (reloaded.failed() && !oldValue.failed()) {
+                        reload.cancel(false);
+                    } else {
+                        reload.complete(reloaded);
+                    }
+                } catch (CallNotPermittedException e) {
+                    // The breaker is open: the previous value is served until it expires, as with a failed refresh.
+                    reload.cancel(false);
+                } catch (RuntimeException | Error e) {
+                    reload.completeExceptionally(e);
+                }
+            });
+            return reload;
+        }
+    }
+
+    // What the waiters of an abandoned load get, so they load again. Never leaves this class.
+    private static final class LoadAbandonedException extends RuntimeException {
+        private static final LoadAbandonedException INSTANCE = new LoadAbandonedException();
+
+        private LoadAbandonedException() {
+            super("Load abandoned", null, false, false);
+        }
+    }
+}
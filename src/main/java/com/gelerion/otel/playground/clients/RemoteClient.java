@@ -1,9 +1,14 @@
 package com.gelerion.otel.playground.clients;
 
+import com.gelerion.otel.playground.concurrency.RequestContextSnapshot;
+import com.gelerion.otel.playground.concurrency.SingleFlight;
 import com.gelerion.otel.playground.feature.flags.FeatureFlag;
-import com.gelerion.otel.playground.filters.before.OtelContextPropagationBeforeFilter;
+import com.gelerion.otel.playground.feature.flags.FlaggedKey;
+import com.gelerion.otel.playground.config.otel.TelemetryHandles;
 import com.gelerion.otel.playground.metrics.MetricsProvider;
-import io.opentelemetry.api.GlobalOpenTelemetry;
+import com.gelerion.otel.playground.resilience.CallNotPermittedException;
+import com.gelerion.otel.playground.resilience.DependencyGuard;
+import com.gelerion.otel.playground.resilience.ResilienceConfig;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanKind;
@@ -18,10 +23,37 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
-import java.util.concurrent.ThreadLocalRandom;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 
-@SuppressWarnings("all")
+/*
+Calls the recommendations service (by default the in-process StubRecommendationsServer, see RemoteClientConfig).
+
+One HttpClient is shared by all calls. It keeps idle HTTP/1.1 connections open for reuse (30s, see
+jdk.httpclient.keepalive.timeout) and opens a new one only when every pooled connection is busy; with an https URL it
+negotiates HTTP/2 and multiplexes the calls over a single connection. Over plain http it offers an h2c upgrade on each
+new connection, which the stub declines, so those stay on HTTP/1.1.
+
+Each call has its own timeout (an HttpTimeoutException fails the call), and the exchange itself is non-blocking:
+  - callRecommendationsAsync returns a CompletableFuture and never blocks the caller.
+  - callRecommendations waits for that future. The controller calls it on a fan-out virtual thread (through the cache),
+    which unmounts while it waits, so no Jetty or carrier thread is held during the call.
+
+Both go through the service's circuit breaker and bulkhead (DependencyGuard): a 5xx or an exception is a failed call, a
+call of 2s or more (the timeout is 3s) a slow one. While the breaker is open, or 50 calls are already in flight, a call
+fails with a CallNotPermittedException at once: no request, and its span only has the "dependency.call.rejected" event.
+In callRecommendations the guard sits inside the coalescing, around the leader's exchange: followers take no slot and
+aren't counted, they share the leader's response or rejection.
+ */
 public class RemoteClient {
     private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -29,107 +61,221 @@ public class RemoteClient {
     static final TextMapSetter<HttpRequest.Builder> SETTER = (carrier, key, value) ->
             carrier.header(key, value);
 
+    // Returned (rather than thrown) when the service answers with a 5xx.
+    public static final String ERROR_RESPONSE = "Error response";
+
+    // Metric attributes. There are only two outcomes, so both sets are built once instead of on every call.
+    private static final Attributes SUCCESS_METRIC_ATTRIBUTES = metricAttributes("success");
+    private static final Attributes ERROR_METRIC_ATTRIBUTES = metricAttributes("error");
+
+    private final RemoteClientConfig config;
     private final MetricsProvider metricsProvider;
+    private final HttpClient http;
+    // Concurrent requests for the same user's recommendations, under the same feature flag, share one outgoing call.
+    private final SingleFlight<FlaggedKey<String>, HttpResponse<String>> recommendationFlights;
+    private final DependencyGuard guard;
 
-    public RemoteClient(MetricsProvider metricsProvider) {
+    public RemoteClient(RemoteClientConfig config, MetricsProvider metricsProvider) {
+        this.config = config;
         this.metricsProvider = metricsProvider;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(config.connectTimeout())
+                // Runs the response handling and the callbacks of callRecommendationsAsync (instead of a cached pool).
+                .executor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("recommendations-http-", 0).factory()))
+                .build();
+        this.recommendationFlights = new SingleFlight<>("recommendations", metricsProvider);
+        this.guard = DependencyGuard.create(
+                ResilienceConfig.fromSystemProperties("recommendations", Duration.ofMillis(2_000), 50), metricsProvider);
     }
 
     public String callRecommendations(String userName) {
         long start = System.nanoTime();
-        // Creates a CLIENT span, which is a child of the current server span.
-        Span span = OtelContextPropagationBeforeFilter.tracer()
+        Span span = startSpan();
+        try (Scope __ = span.makeCurrent()) {
+            HttpRequest request = buildRequest(userName);
+            // Followers share the leader's response; their own (injected) request is never sent.
+            HttpResponse<String> resp = recommendationFlights.execute(FlaggedKey.current(userName),
+                    () -> guard.call(() -> await(send(request)), response -> response.statusCode() >= 500));
+            return onResponse(span, start, resp);
+        } catch (CallNotPermittedException ex) {
+            // Never sent: nothing to record but the rejection event the guard added. The controller degrades.
+            throw ex;
+        } catch (Exception ex) {
+            throw onFailure(span, start, ex);
+        } finally {
+            span.end();
+        }
+    }
+
+    // Not coalesced: SingleFlight waits for the leader on the caller's thread.
+    public CompletableFuture<String> callRecommendationsAsync(String userName) {
+        DependencyGuard.Permit permit;
+        try {
+            permit = guard.acquire();
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        long start = System.nanoTime();
+        Span span = startSpan();
+        HttpRequest request;
+        RequestContextSnapshot context;
+        // The headers are injected here, on the caller's thread, while the CLIENT span is current.
+        try (Scope __ = span.makeCurrent()) {
+            request = buildRequest(userName);
+            context = RequestContextSnapshot.capture();
+        } catch (RuntimeException ex) {
+            permit.onIgnored();
+            RuntimeException failure = onFailure(span, start, ex);
+            span.end();
+            throw failure;
+        }
+
+        // The response is handled on one of the client's threads, where nothing of the request is current: the
+        // callback restores the CLIENT span (and the MDC), so whatever it records or logs ends up in the right trace.
+        CompletableFuture<HttpResponse<String>> exchange = send(request);
+        CompletableFuture<String> outcome = exchange.handle(context.wrapFunction((resp, error) -> {
+            try {
+                if (error != null) throw onFailure(span, start, unwrap(error));
+                return onResponse(span, start, resp);
+            } finally {
+                span.end();
+            }
+        }));
+        // The permit goes back to the breaker and the bulkhead however the exchange ends (a cancellation isn't counted).
+        outcome.whenComplete((value, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause == null) {
+                permit.onResult(ERROR_RESPONSE.equals(value));
+            } else if (DependencyGuard.isCancellation(cause)) {
+                permit.onIgnored();
+            } else {
+                permit.onResult(true);
+            }
+        });
+
+        // Cancelling the caller's copy aborts the exchange; outcome then still ends the span, as cancelled.
+        CompletableFuture<String> result = outcome.copy();
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) exchange.cancel(true);
+        });
+        return result;
+    }
+
+    // Creates a CLIENT span, which is a child of the current server span.
+    private Span startSpan() {
+        Span span = TelemetryHandles.tracer()
                 .spanBuilder("HTTP POST /api/v1/recommend")
                 .setSpanKind(SpanKind.CLIENT)
                 .startSpan();
 
         // Sets low-cardinality, semconv-friendly attributes.
         span.setAttribute(HttpAttributes.HTTP_REQUEST_METHOD, "POST");
-        span.setAttribute(ClientAttributes.CLIENT_ADDRESS, "recommendations.internal");
-        span.setAttribute(ClientAttributes.CLIENT_PORT, 443);
-
-        try (Scope __ = span.makeCurrent()) {
-            URI uri = URI.create("https://recommendations.internal/api/v1/recommend?userName=" + userName);
-            logger.atInfo().addKeyValue("uri", uri).log("Calling recommendations service");
-            // Builds the request.
-            HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
-                    .POST(HttpRequest.BodyPublishers.noBody());
+        span.setAttribute(ClientAttributes.CLIENT_ADDRESS, config.baseUri().getHost());
+        span.setAttribute(ClientAttributes.CLIENT_PORT, config.port());
+        return span;
+    }
 
-            // Injects W3C trace headers (traceparent, tracestate) so the downstream service can link your span.
-            GlobalOpenTelemetry.getPropagators()
-                    .getTextMapPropagator()
-                    .inject(Context.current(), builder, SETTER);
+    // Call it with the CLIENT span current.
+    private HttpRequest buildRequest(String userName) {
+        URI uri = config.baseUri().resolve("/api/v1/recommend?userName=" + URLEncoder.encode(userName, StandardCharsets.UTF_8));
+        logger.atInfo().addKeyValue("uri", uri).log("Calling recommendations service");
+        // Builds the request.
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(config.timeout())
+                .POST(HttpRequest.BodyPublishers.noBody());
 
-            HttpRequest request = builder.build();
-            logger.atInfo().log("Injected headers: {}", request.headers());
+        // The service answers with the latency and error rate of the caller's profile.
+        String featureFlag = FeatureFlag.current().toHeader();
+        if (featureFlag != null) {
+            builder.header(FeatureFlag.HEADER, featureFlag);
+        }
 
-            //HttpResponse<String> resp = http.send(request, HttpResponse.BodyHandlers.ofString());
-            Response resp = send(request);
+        // Injects W3C trace headers (traceparent, tracestate) so the downstream service can link your span.
+        TelemetryHandles.propagators()
+                .getTextMapPropagator()
+                .inject(Context.current(), builder, SETTER);
 
-            // Sets outcome attributes.
-            span.setAttribute(HttpAttributes.HTTP_RESPONSE_STATUS_CODE, resp.statusCode());
+        HttpRequest request = builder.build();
+        logger.atInfo().log("Injected headers: {}", request.headers());
+        return request;
+    }
 
-            if (resp.statusCode() >= 500) {
-                span.setStatus(StatusCode.ERROR, "HTTP " + resp.statusCode());
-            } else {
-                span.setStatus(StatusCode.OK);
-            }
+    private CompletableFuture<HttpResponse<String>> send(HttpRequest request) {
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
 
-            // Records metrics.
-            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
-            String outcome = resp.statusCode() >= 500 ? "error" : "success";
-            metricsProvider.clientRequestDurationHistogram().record(seconds, Attributes.builder()
-                    .put("component", "http.client")
-                    .put("outcome", outcome)
-                    .put(ClientAttributes.CLIENT_ADDRESS, "recommendations")
-                    .put(HttpAttributes.HTTP_REQUEST_METHOD, "POST")
-                    .build());
-
-            if (resp.statusCode() >= 500) {
-                Span.current().addEvent("Recommendations service returned 500 error");
-                return "Error response";
-            }
+    private String onResponse(Span span, long start, HttpResponse<String> resp) {
+        // Sets outcome attributes.
+        span.setAttribute(HttpAttributes.HTTP_RESPONSE_STATUS_CODE, resp.statusCode());
 
-            return "Learn deeper!";
-        } catch (Exception ex) {
-            span.recordException(ex);
-            span.setStatus(StatusCode.ERROR, ex.getMessage() != null ? ex.getMessage() : "client error");
+        if (resp.statusCode() >= 500) {
+            span.setStatus(StatusCode.ERROR, "HTTP " + resp.statusCode());
+        } else {
+            span.setStatus(StatusCode.OK);
+        }
 
-            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
-            metricsProvider.clientRequestDurationHistogram().record(seconds, Attributes.builder()
-                    .put("component", "http.client")
-                    .put(ClientAttributes.CLIENT_ADDRESS, "recommendations")
-                    .put(HttpAttributes.HTTP_REQUEST_METHOD, "POST")
-                    .put("outcome", "error")
-                    .build());
+        // Records metrics.
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        metricsProvider.clientRequestDurationHistogram().record(seconds,
+                resp.statusCode() >= 500 ? ERROR_METRIC_ATTRIBUTES : SUCCESS_METRIC_ATTRIBUTES);
 
-            throw ex;
-        } finally {
-            span.end();
+        if (resp.statusCode() >= 500) {
+            span.addEvent("Recommendations service returned " + resp.statusCode() + " error");
+            return ERROR_RESPONSE;
         }
-    }
 
-    private Response send(HttpRequest request) {
-        sleepQuietly();
+        return resp.body();
+    }
 
-        FeatureFlag flag = FeatureFlag.current();
-        if (ThreadLocalRandom.current().nextDouble() < flag.clientErrorRate()) {
-            return new Response(500);
+    // Records the failure and returns the exception to throw. A cancelled call (e.g. the parallel DB lookup failed, so
+    // the fan-out gave up on this one) is not the service's fault: an event, but no error status and no error sample,
+    // the same as DbOperations and DependencyGuard.isCancellation have it.
+    private RuntimeException onFailure(Span span, long start, Exception ex) {
+        if (DependencyGuard.isCancellation(ex)) {
+            span.addEvent("Call cancelled");
+            if (ex instanceof CancellationException cancelled) return cancelled;
+            // Interrupted while waiting for the response or for a coalesced call.
+            if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
+            return new CancellationException("Recommendations call cancelled");
         }
 
-        return new Response(200);
-    }
+        span.recordException(ex);
+        span.setStatus(StatusCode.ERROR, ex.getMessage() != null ? ex.getMessage() : "client error");
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        metricsProvider.clientRequestDurationHistogram().record(seconds, ERROR_METRIC_ATTRIBUTES);
 
-    private record Response(int statusCode) {}
+        if (ex instanceof RuntimeException re) return re;
+        return new RuntimeException(ex);
+    }
 
-    private void sleepQuietly() {
-        FeatureFlag flag = FeatureFlag.current();
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
         try {
-            int delay = ThreadLocalRandom.current().nextInt(
-                    flag.clientMinLatency(), 
-                    flag.clientMaxLatency()
-            );
-            Thread.sleep(delay);
-        } catch (InterruptedException ignore) {}
+            return future.get();
+        } catch (InterruptedException e) {
+            // Aborts the exchange, so the connection isn't held for a response nobody waits for.
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof Exception ex) return ex;
+        if (cause instanceof Error err) throw err;
+        return new RuntimeException(cause);
+    }
+
+    private static Attributes metricAttributes(String outcome) {
+        return Attributes.builder()
+                .put("component", "http.client")
+                .put("outcome", outcome)
+                .put(ClientAttributes.CLIENT_ADDRESS, "recommendations")
+                .put(HttpAttributes.HTTP_REQUEST_METHOD, "POST")
+                .build();
     }
 }
@@ -0,0 +1,40 @@
+package com.gelerion.otel.playground.clients;
+
+import java.net.URI;
+import java.time.Duration;
+
+/*
+Recommendations service client settings, all overridable with system properties:
+  -Drecommendations.url                 base URL of the service (default: http://localhost:8081, the embedded stub)
+  -Drecommendations.connectTimeoutMs    how long opening a new connection may take (default: 500)
+  -Drecommendations.timeoutMs           per call, until the response headers arrive (default: 3000, above the
+                                        high-latency profile's 2s)
+  -Drecommendations.stub                start the stub service in-process, on the URL's port (default: true)
+ */
+public record RemoteClientConfig(URI baseUri, Duration connectTimeout, Duration timeout, boolean embeddedStub) {
+
+    public static final String DEFAULT_URL = "http://localhost:8081";
+
+    public RemoteClientConfig {
+        if (baseUri.getHost() == null) {
+            throw new IllegalArgumentException("recommendations.url must be an absolute URL, got " + baseUri);
+        }
+        if (connectTimeout.isNegative() || connectTimeout.isZero() || timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("recommendations.connectTimeoutMs and recommendations.timeoutMs must be positive");
+        }
+    }
+
+    public static RemoteClientConfig fromSystemProperties() {
+        return new RemoteClientConfig(
+                URI.create(System.getProperty("recommendations.url", DEFAULT_URL)),
+                Duration.ofMillis(Long.getLong("recommendations.connectTimeoutMs", 500)),
+                Duration.ofMillis(Long.getLong("recommendations.timeoutMs", 3_000)),
+                Boolean.parseBoolean(System.getProperty("recommendations.stub", "true")));
+    }
+
+    // The port the embedded stub listens on.
+    public int port() {
+        if (baseUri.getPort() != -1) return baseUri.getPort();
+        return "https".equals(baseUri.getScheme()) ? 443 : 80;
+    }
+}
@@ -0,0 +1,88 @@
+package com.gelerion.otel.playground.clients;
+
+import com.gelerion.otel.playground.faults.FaultProfile;
+import com.gelerion.otel.playground.feature.flags.FeatureFlag;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+A stand-in for the recommendations service, so the whole call path (connection pool, timeouts, trace headers) can be
+load-tested on one machine. Server starts it in-process on the port of recommendations.url (see RemoteClientConfig);
+run it on its own with `make stub-recommendations`, and start the server with
+`make up recommendations=http://localhost:8081`.
+
+POST /api/v1/recommend answers "Learn deeper!" after a delay drawn from the caller's FeatureFlag profile (its client
+FaultProfile), or a 500 at its error rate. RemoteClient forwards the flag in the X-Feature-Flag header; without one, the baseline applies.
+It doesn't trace: the trace headers are accepted and ignored.
+  -Dstub.port      port to listen on when started on its own (default: 8081)
+ */
+public class StubRecommendationsServer implements AutoCloseable {
+    private static final byte[] RECOMMENDATIONS = "Learn deeper!".getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private StubRecommendationsServer(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("stub.port", 8081);
+        start(port);
+        System.out.println("Stub recommendations service listening on http://localhost:" + port);
+    }
+
+    public static StubRecommendationsServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        // Each exchange sleeps for its whole latency, which costs a virtual thread next to nothing.
+        ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("stub-recommendations-", 0).factory());
+        server.setExecutor(executor);
+        server.createContext("/api/v1/recommend", StubRecommendationsServer::recommend);
+        server.start();
+        return new StubRecommendationsServer(server, executor);
+    }
+
+    private static void recommend(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            // Drains the body, otherwise the client can't reuse the connection.
+            exchange.getRequestBody().readAllBytes();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            FaultProfile faults = FeatureFlag.fromHeader(exchange.getRequestHeaders().getFirst(FeatureFlag.HEADER)).client();
+            try {
+                Thread.sleep(faults.latencyMillis());
+                if (faults.failsNow()) {
+                    // failure=timeout: hangs, so it's RemoteClient's timeout that ends the call.
+                    if (faults.failure() == FaultProfile.FailureMode.TIMEOUT) Thread.sleep(faults.hang().toMillis());
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // Stopping.
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, RECOMMENDATIONS.length);
+            exchange.getResponseBody().write(RECOMMENDATIONS);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,106 @@
+package com.gelerion.otel.playground.concurrency;
+
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.context.Scope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/*
+Decorates an ExecutorService so that every task runs with the RequestContextSnapshot of the thread that submitted it
+(span, baggage, MDC, feature flag), instead of hand-wrapping each task with Context.current().wrap(...).
+
+The snapshot is taken in execute(), on the submitting thread; submit/invokeAll/invokeAny go through it as well
+(AbstractExecutorService wraps them in a FutureTask first, so cancel(true) still interrupts the running task).
+Per task that's the snapshot and one wrapper, plus a copy of the MDC if it isn't empty.
+
+Records executor.task.queue_wait and executor.task.duration{executor.name} per task, with the task's context current,
+so exemplars point at the trace that submitted it.
+ */
+public class ContextPropagatingExecutorService extends AbstractExecutorService {
+    private static final AttributeKey<String> EXECUTOR_NAME = AttributeKey.stringKey("executor.name");
+
+    private final ExecutorService delegate;
+    private final MetricsProvider metricsProvider;
+    private final Attributes attributes;
+
+    public ContextPropagatingExecutorService(String name, ExecutorService delegate, MetricsProvider metricsProvider) {
+        this.delegate = delegate;
+        this.metricsProvider = metricsProvider;
+        this.attributes = Attributes.of(EXECUTOR_NAME, name);
+    }
+
+    // A thread per task on virtual threads: the queue wait is the time to start a thread (and to get a carrier).
+    public static ContextPropagatingExecutorService virtual(String name, MetricsProvider metricsProvider) {
+        return new ContextPropagatingExecutorService(name,
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory()),
+                metricsProvider);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(new Task(command, RequestContextSnapshot.capture(), System.nanoTime()));
+    }
+
+    private final class Task implements Runnable {
+        private final Runnable command;
+        private final RequestContextSnapshot snapshot;
+        private final long submittedAt;
+
+        private Task(Runnable command, RequestContextSnapshot snapshot, long submittedAt) {
+            this.command = command;
+            this.snapshot = snapshot;
+            this.submittedAt = submittedAt;
+        }
+
+        @Override
+        public void run() {
+            long startedAt = System.nanoTime();
+            try (Scope __ = snapshot.restore()) {
+                metricsProvider.executorQueueWaitHistogram().record((startedAt - submittedAt) / 1_000_000_000.0, attributes);
+                try {
+                    command.run();
+                } finally {
+                    metricsProvider.executorTaskDurationHistogram().record((System.nanoTime() - startedAt) / 1_000_000_000.0, attributes);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    // Returns the submitted tasks (not our wrappers) that never started.
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = delegate.shutdownNow();
+        List<Runnable> unwrapped = new ArrayList<>(pending.size());
+        for (Runnable runnable : pending) {
+            unwrapped.add(runnable instanceof Task task ? task.command : runnable);
+        }
+        return unwrapped;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,29 @@
+package com.gelerion.otel.playground.concurrency;
+
+import java.util.concurrent.ThreadFactory;
+
+/*
+A ThreadFactory whose threads run with the RequestContextSnapshot of the thread that created them.
+
+Only for threads that run a single task: Thread.start, or Executors.newThreadPerTaskExecutor(factory), which creates
+the thread in execute(), on the submitting thread. A pool creates its threads for whichever task happens to make it
+grow, and the thread would keep that request's context for every later task: use ContextPropagatingExecutorService
+for pools.
+ */
+public class ContextPropagatingThreadFactory implements ThreadFactory {
+    private final ThreadFactory delegate;
+
+    public ContextPropagatingThreadFactory(ThreadFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    // Virtual threads named prefix-0, prefix-1, ...
+    public static ContextPropagatingThreadFactory virtual(String prefix) {
+        return new ContextPropagatingThreadFactory(Thread.ofVirtual().name(prefix, 0).factory());
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+        return delegate.newThread(RequestContextSnapshot.capture().wrap(task));
+    }
+}
@@ -0,0 +1,79 @@
+package com.gelerion.otel.playground.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+Runs a handful of independent calls concurrently on behalf of one request.
+StructuredTaskScope is still a preview API in Java 21, so this is a minimal "shutdown on failure" scope:
+  - Each forked task runs on the given executor (a virtual thread per task in the controller), which restores the
+    caller's RequestContextSnapshot, so CLIENT spans created inside the task are children of the caller's SERVER span.
+  - The first task to fail cancels (interrupts) the tasks that are still running, and join() rethrows its exception.
+  - If the caller is interrupted while joining, or leaves the try-with-resources block early, all tasks are cancelled.
+Not thread-safe: fork and join are called by the owning request thread only.
+ */
+public class FanOut implements AutoCloseable {
+    private final ContextPropagatingExecutorService executor;
+    private final List<Future<?>> tasks = new ArrayList<>(2);
+    private final BlockingQueue<Future<?>> completed = new LinkedBlockingQueue<>();
+
+    public FanOut(ContextPropagatingExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public <T> Future<T> fork(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task) {
+            @Override
+            protected void done() {
+                completed.add(this);
+            }
+        };
+        tasks.add(future);
+        executor.execute(future);
+        return future;
+    }
+
+    // Waits until every forked task has completed successfully, or fails fast with the first exception.
+    public void join() throws InterruptedException {
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                Future<?> done = completed.take();
+                if (done.isCancelled()) {
+                    continue;
+                }
+                try {
+                    done.get();
+                } catch (ExecutionException e) {
+                    cancelAll();
+                    throw propagate(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        for (Future<?> task : tasks) {
+            task.cancel(true);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException ex) return ex;
+        if (cause instanceof Error err) throw err;
+        return new RuntimeException(cause);
+    }
+}
@@ -0,0 +1,135 @@
+package com.gelerion.otel.playground.concurrency;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.util.IndexedStringMap;
+import org.apache.logging.log4j.util.SortedArrayStringMap;
+import org.apache.logging.log4j.util.StringMap;
+import org.apache.logging.log4j.util.TriConsumer;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Everything the request handling keeps in thread-locals: the OTel Context (current span, baggage and FeatureFlag)
+// and the Log4j ThreadContext (MDC). Neither flows to another thread by itself, so we capture them on the request
+// thread and restore them around the task on the worker thread.
+//
+// The wrap methods mirror Context.wrap/wrapFunction/..., for CompletableFuture callbacks that run on whichever thread
+// completes the future. ContextPropagatingExecutorService and ContextPropagatingThreadFactory capture for you.
+public record RequestContextSnapshot(Context otelContext, StringMap threadContext) {
+    private static final StringMap EMPTY_THREAD_CONTEXT = frozen(new SortedArrayStringMap(0));
+    private static final TriConsumer<String, Object, StringMap> PUT = (key, value, map) -> map.putValue(key, value);
+
+    public static RequestContextSnapshot capture() {
+        return new RequestContextSnapshot(Context.current(), currentThreadContext());
+    }
+
+    public <T> Callable<T> wrap(Callable<T> task) {
+        return () -> {
+            try (Scope __ = restore()) {
+                return task.call();
+            }
+        };
+    }
+
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            try (Scope __ = restore()) {
+                task.run();
+            }
+        };
+    }
+
+    public <T> Supplier<T> wrapSupplier(Supplier<T> supplier) {
+        return () -> {
+            try (Scope __ = restore()) {
+                return supplier.get();
+            }
+        };
+    }
+
+    public <T, R> Function<T, R> wrapFunction(Function<T, R> function) {
+        return value -> {
+            try (Scope __ = restore()) {
+                return function.apply(value);
+            }
+        };
+    }
+
+    // For CompletableFuture.handle.
+    public <T, U, R> BiFunction<T, U, R> wrapFunction(BiFunction<T, U, R> function) {
+        return (value, error) -> {
+            try (Scope __ = restore()) {
+                return function.apply(value, error);
+            }
+        };
+    }
+
+    // For CompletableFuture.whenComplete.
+    public <T, U> BiConsumer<T, U> wrapConsumer(BiConsumer<T, U> consumer) {
+        return (value, error) -> {
+            try (Scope __ = restore()) {
+                consumer.accept(value, error);
+            }
+        };
+    }
+
+    // Activates the captured state on the current thread. Closing the returned scope restores what was there before.
+    public Scope restore() {
+        StringMap previousThreadContext = swapThreadContext(threadContext);
+        Scope otelScope = otelContext.makeCurrent();
+
+        return () -> {
+            otelScope.close();
+            swapThreadContext(previousThreadContext);
+        };
+    }
+
+    // A frozen copy of the MDC, sized to its entries. getImmutableContext() would copy it into a HashMap (with the
+    // garbage-free ThreadContext map from log4j2.component.properties), and the copy constructor takes over the whole
+    // capacity of the thread's map. An empty MDC isn't copied.
+    private static StringMap currentThreadContext() {
+        if (ThreadContext.isEmpty()) return EMPTY_THREAD_CONTEXT;
+        StringMap live = ThreadContext.getThreadContextMap().getReadOnlyContextData();
+        StringMap copy = new SortedArrayStringMap(live.size());
+        live.forEach(PUT, copy);
+        return frozen(copy);
+    }
+
+    // Installs next as the MDC and returns the previous one.
+    private static StringMap swapThreadContext(StringMap next) {
+        StringMap current = ThreadContext.getThreadContextMap().getReadOnlyContextData();
+        if (sameEntries(current, next)) {
+            // Already in place: a fresh worker thread and an empty snapshot, or a callback that runs on the thread
+            // that captured it. Putting next back afterwards restores the same state.
+            return next;
+        }
+        StringMap previous = currentThreadContext();
+        if (!current.isEmpty()) ThreadContext.clearMap();
+        next.forEach((key, value) -> ThreadContext.put(key, (String) value));
+        return previous;
+    }
+
+    // SortedArrayStringMap.equals allocates; both maps are sorted, so comparing index by index is enough.
+    private static boolean sameEntries(StringMap a, StringMap b) {
+        if (a.size() != b.size()) return false;
+        if (a.isEmpty()) return true;
+        if (!(a instanceof IndexedStringMap x) || !(b instanceof IndexedStringMap y)) return false;
+        for (int i = 0; i < x.size(); i++) {
+            if (!x.getKeyAt(i).equals(y.getKeyAt(i)) || !Objects.equals(x.getValueAt(i), y.getValueAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static StringMap frozen(StringMap map) {
+        map.freeze();
+        return map;
+    }
+}
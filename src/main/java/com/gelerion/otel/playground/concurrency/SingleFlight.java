@@ -0,0 +1,113 @@
+package com.gelerion.otel.playground.concurrency;
+
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/*
+Request coalescing: concurrent callers asking for the same key share one in-flight backend call.
+The first caller (the leader) runs the call on its own thread; callers arriving while it is in flight (followers) wait
+for its result instead of issuing a duplicate call. Once the call completes, the next caller starts a new one; nothing
+is cached.
+
+Tracing stays truthful: every caller keeps its own CLIENT span (it did wait that long), but a follower's span is marked
+as coalesced and links to the leader's span, which is the one that actually talked to the backend.
+
+The leader's failure is shared as well: followers get the same exception. A cancelled leader is different: its own
+request gave up (e.g. its fan-out failed), which says nothing about the backend and nothing about the followers'
+requests. Its followers then run execute again, so one of them becomes the new leader and the others follow it.
+
+The key must include everything the call depends on besides the key itself: DbOperations and RemoteClient use a
+FlaggedKey, because the injected faults (and the forwarded X-Feature-Flag header) come from the leader's feature flag.
+ */
+public class SingleFlight<K, V> {
+    public static final AttributeKey<Boolean> COALESCED = AttributeKey.booleanKey("singleflight.coalesced");
+    private static final AttributeKey<String> DEPENDENCY = AttributeKey.stringKey("dependency");
+    private static final AttributeKey<String> ROLE = AttributeKey.stringKey("singleflight.role");
+
+    private final ConcurrentMap<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final MetricsProvider metricsProvider;
+    private final Attributes leaderAttributes;
+    private final Attributes followerAttributes;
+
+    private record Flight<V>(CompletableFuture<V> result, SpanContext leaderSpan) {}
+
+    public SingleFlight(String dependency, MetricsProvider metricsProvider) {
+        this.metricsProvider = metricsProvider;
+        this.leaderAttributes = Attributes.of(DEPENDENCY, dependency, ROLE, "leader");
+        this.followerAttributes = Attributes.of(DEPENDENCY, dependency, ROLE, "follower");
+    }
+
+    // Call it with the caller's CLIENT span current: the leader's span is the link target for the followers.
+    public V execute(K key, Callable<V> call) throws Exception {
+        Flight<V> flight = new Flight<>(new CompletableFuture<>(), Span.current().getSpanContext());
+        boolean followed = false;
+        Flight<V> leader;
+        while ((leader = inFlight.putIfAbsent(key, flight)) != null) {
+            followed = true;
+            try {
+                return follow(leader);
+            } catch (LeaderCancelledException e) {
+                // Tries again: leads the call this time, or follows whoever got there first.
+            }
+        }
+        // Its leader was cancelled, so this caller does the work after all (the link to that leader stays).
+        if (followed) Span.current().setAttribute(COALESCED, false);
+
+        metricsProvider.singleFlightCallsCounter().add(1, leaderAttributes);
+        try {
+            V value = call.call();
+            inFlight.remove(key, flight);
+            flight.result().complete(value);
+            return value;
+        } catch (Throwable e) {
+            inFlight.remove(key, flight);
+            flight.result().completeExceptionally(isCancellation(e) ? LeaderCancelledException.INSTANCE : e);
+            throw e;
+        }
+    }
+
+    private V follow(Flight<V> leader) throws Exception {
+        Span span = Span.current();
+        span.setAttribute(COALESCED, true);
+        if (leader.leaderSpan().isValid()) {
+            span.addLink(leader.leaderSpan());
+        }
+
+        try {
+            V value = leader.result().get();
+            metricsProvider.singleFlightCallsCounter().add(1, followerAttributes);
+            return value;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LeaderCancelledException cancelled) throw cancelled;
+            metricsProvider.singleFlightCallsCounter().add(1, followerAttributes);
+            if (cause instanceof Exception ex) throw ex;
+            if (cause instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    private static boolean isCancellation(Throwable e) {
+        return e instanceof CancellationException || e instanceof InterruptedException
+                || e.getCause() instanceof InterruptedException;
+    }
+
+    // What followers of a cancelled leader get instead of its exception. Never leaves this class.
+    private static final class LeaderCancelledException extends Exception {
+        private static final LeaderCancelledException INSTANCE = new LeaderCancelledException();
+
+        private LeaderCancelledException() {
+            super("Leader cancelled", null, false, false);
+        }
+    }
+}
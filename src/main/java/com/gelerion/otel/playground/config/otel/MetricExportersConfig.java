@@ -0,0 +1,38 @@
+package com.gelerion.otel.playground.config.otel;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+How metrics leave the process (system properties, named like the SDK autoconfigure options).
+  -Dotel.metrics.exporter           otlp (default), prometheus, otlp,prometheus or none
+  -Dotel.exporter.prometheus.host   interface of the scrape endpoint (default: 0.0.0.0)
+  -Dotel.exporter.prometheus.port   port of the scrape endpoint, served at /metrics (default: 9464)
+
+otlp: PeriodicMetricReader pushes every 5s to the Collector, which remote-writes to Prometheus.
+prometheus: PrometheusHttpServer serves the current state whenever Prometheus scrapes it; nothing is done in between.
+Exemplars come along when Prometheus scrapes in the OpenMetrics format (see lgtm/prometheus.yml).
+ */
+public record MetricExportersConfig(boolean otlp, boolean prometheus, String prometheusHost, int prometheusPort) {
+
+    private static final Set<String> EXPORTERS = Set.of("otlp", "prometheus", "none");
+
+    public static MetricExportersConfig fromSystemProperties() {
+        Set<String> exporters = Arrays.stream(System.getProperty("otel.metrics.exporter", "otlp").split(","))
+                .map(value -> value.trim().toLowerCase(Locale.ROOT))
+                .filter(value -> !value.isEmpty())
+                .collect(Collectors.toSet());
+        for (String exporter : exporters) {
+            if (!EXPORTERS.contains(exporter)) {
+                throw new IllegalArgumentException("Unsupported otel.metrics.exporter: " + exporter);
+            }
+        }
+        return new MetricExportersConfig(
+                exporters.contains("otlp"),
+                exporters.contains("prometheus"),
+                System.getProperty("otel.exporter.prometheus.host", "0.0.0.0"),
+                Integer.getInteger("otel.exporter.prometheus.port", 9464));
+    }
+}
@@ -0,0 +1,63 @@
+package com.gelerion.otel.playground.config.otel;
+
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
+import io.opentelemetry.sdk.metrics.export.CardinalityLimitSelector;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+Temporality and cardinality limits of the metric reader (system properties).
+  -Dotel.metrics.temporality                     cumulative (default), delta or lowmemory
+  -Dotel.metrics.temporality.<instrument type>   cumulative or delta for one type, e.g. .histogram=delta
+  -Dotel.metrics.cardinalityLimit                attribute sets per instrument and collection (default: 2000)
+  -Dotel.metrics.cardinalityLimit.<type>         the same for one type, e.g. .counter=500
+Instrument types: counter, up_down_counter, histogram, gauge, observable_counter, observable_up_down_counter,
+observable_gauge. Limits for single instruments (by name) are views, see MetricViewConfig.
+
+Cumulative: the SDK keeps the running total of every attribute set it has seen, for the lifetime of the process,
+because each export repeats all of them. Once an instrument has reached its limit, all new attribute sets land in
+the overflow point from then on, even if the old ones were never recorded again.
+Delta: each export only carries what was recorded since the previous one, and the SDK forgets attribute sets that
+were not recorded during the interval. Memory follows the number of attribute sets per interval, not the total ever
+seen. The backend has to sum the deltas (the Collector's deltatocumulative processor, or a delta-native backend).
+lowmemory is delta for synchronous counters and histograms, and cumulative for the rest (as the SDK defines it).
+ */
+public record MetricReaderConfig(AggregationTemporalitySelector temporalitySelector,
+                                 CardinalityLimitSelector cardinalityLimitSelector) {
+
+    private static final String TEMPORALITY_PROPERTY = "otel.metrics.temporality";
+    private static final String CARDINALITY_LIMIT_PROPERTY = "otel.metrics.cardinalityLimit";
+    // The SDK's default (MetricStorage.DEFAULT_MAX_CARDINALITY).
+    private static final int DEFAULT_CARDINALITY_LIMIT = 2000;
+
+    public static MetricReaderConfig fromSystemProperties() {
+        AggregationTemporalitySelector preset = temporalityPreset(System.getProperty(TEMPORALITY_PROPERTY, "cumulative"));
+        Map<InstrumentType, AggregationTemporality> temporality = new EnumMap<>(InstrumentType.class);
+        Map<InstrumentType, Integer> limits = new EnumMap<>(InstrumentType.class);
+        int defaultLimit = Integer.getInteger(CARDINALITY_LIMIT_PROPERTY, DEFAULT_CARDINALITY_LIMIT);
+
+        for (InstrumentType type : InstrumentType.values()) {
+            String suffix = "." + type.name().toLowerCase(Locale.ROOT);
+            String typeTemporality = System.getProperty(TEMPORALITY_PROPERTY + suffix);
+            temporality.put(type, typeTemporality == null
+                    ? preset.getAggregationTemporality(type)
+                    : AggregationTemporality.valueOf(typeTemporality.trim().toUpperCase(Locale.ROOT)));
+            limits.put(type, Integer.getInteger(CARDINALITY_LIMIT_PROPERTY + suffix, defaultLimit));
+        }
+        return new MetricReaderConfig(temporality::get, limits::get);
+    }
+
+    private static AggregationTemporalitySelector temporalityPreset(String value) {
+        return switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "cumulative" -> AggregationTemporalitySelector.alwaysCumulative();
+            case "delta" -> AggregationTemporalitySelector.deltaPreferred();
+            case "lowmemory" -> AggregationTemporalitySelector.lowMemory();
+            default -> throw new IllegalArgumentException(
+                    TEMPORALITY_PROPERTY + " must be cumulative, delta or lowmemory, but was: " + value);
+        };
+    }
+}
@@ -0,0 +1,159 @@
+package com.gelerion.otel.playground.config.otel;
+
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentSelector;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.SdkMeterProviderBuilder;
+import io.opentelemetry.sdk.metrics.View;
+import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+Views: how histograms are aggregated and per-instrument overrides (system properties).
+  -Dotel.metrics.histogram             explicit (default) or exponential, for every histogram without its own view
+  -Dotel.metrics.histogram.buckets     explicit: bucket boundaries in seconds (default: SECONDS_BUCKETS)
+  -Dotel.metrics.histogram.maxBuckets  exponential: max buckets per sign (default: 160)
+  -Dotel.metrics.histogram.maxScale    exponential: the starting (finest) scale, -10..20 (default: 20)
+
+Per-instrument overrides, by instrument name:
+  -Dotel.metrics.view.<instrument>=explicit|exponential|drop
+  -Dotel.metrics.view.<instrument>.buckets=0.001,0.0025,0.005   explicit bucket boundaries (seconds)
+  -Dotel.metrics.view.<instrument>.maxBuckets=80                exponential budget (.maxScale likewise)
+  -Dotel.metrics.view.<instrument>.cardinalityLimit=100         attribute sets kept per collection; the rest are
+                                                                aggregated into one otel.metric.overflow=true point
+e.g. -Dotel.metrics.view.db.client.operation.duration=exponential
+.buckets, .maxBuckets and .maxScale need the kind to be set. Without one (e.g. only a .cardinalityLimit), a histogram
+keeps -Dotel.metrics.histogram: a view's default aggregation would be the SDK's millisecond buckets, not the
+exporter's choice, so the view sets it explicitly. As the view can only say so for histograms, an instrument without
+a kind gets one view per instrument type, of which only the one of its own type matches.
+Limits per instrument type are set on the reader instead, see MetricReaderConfig.
+
+A base-2 exponential histogram needs no boundaries: it starts at maxScale (the finest resolution) and halves the
+resolution whenever the recorded range does not fit into maxBuckets. With 160 buckets the relative error stays
+around 4% over a 1ms..10s range, so sub-millisecond DB calls and multi-second requests both get useful percentiles.
+ */
+public record MetricViewConfig(Aggregation defaultAggregation, List<InstrumentView> views) {
+
+    public record InstrumentView(InstrumentSelector selector, View view) {}
+
+    // The explicit buckets we used for every histogram. The SDK defaults are millisecond-oriented, but our durations
+    // are in seconds (see SdkMeterProviderConfig).
+    public static final List<Double> SECONDS_BUCKETS = List.of(0.1, 0.2, 0.3, 0.5, 0.75, 1d, 1.5, 2d, 3d, 5d, 7d);
+
+    private static final String HISTOGRAM_PROPERTY = "otel.metrics.histogram";
+    private static final String VIEW_PREFIX = "otel.metrics.view.";
+    private static final int DEFAULT_MAX_BUCKETS = 160;
+    private static final int DEFAULT_MAX_SCALE = 20;
+    private static final String CARDINALITY_LIMIT = ".cardinalityLimit";
+    private static final List<String> AGGREGATION_SETTINGS = List.of(".buckets", ".maxBuckets", ".maxScale");
+    private static final List<String> SETTINGS = List.of(".buckets", ".maxBuckets", ".maxScale", CARDINALITY_LIMIT);
+
+    public MetricViewConfig {
+        views = List.copyOf(views);
+    }
+
+    public static MetricViewConfig fromSystemProperties() {
+        Properties properties = System.getProperties();
+        Aggregation defaultAggregation = aggregation(HISTOGRAM_PROPERTY,
+                properties.getProperty(HISTOGRAM_PROPERTY, "explicit"), properties);
+
+        // Sorted, so views are registered in a stable order.
+        Set<String> instruments = new TreeSet<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(VIEW_PREFIX)) instruments.add(stripSetting(key.substring(VIEW_PREFIX.length())));
+        }
+
+        List<InstrumentView> views = new ArrayList<>();
+        for (String instrument : instruments) {
+            String key = VIEW_PREFIX + instrument;
+            // One view per instrument (and type) with everything set for it: two views selecting the same instrument
+            // would produce two metric streams.
+            String kind = properties.getProperty(key);
+            String cardinalityLimit = properties.getProperty(key + CARDINALITY_LIMIT);
+            if (kind != null) {
+                views.add(new InstrumentView(selector(instrument, null),
+                        view(aggregation(key, kind, properties), cardinalityLimit)));
+                continue;
+            }
+            for (String setting : AGGREGATION_SETTINGS) {
+                if (properties.getProperty(key + setting) != null) {
+                    throw new IllegalArgumentException(
+                            key + setting + " needs " + key + "=explicit|exponential to go with it");
+                }
+            }
+            for (InstrumentType type : InstrumentType.values()) {
+                Aggregation aggregation = type == InstrumentType.HISTOGRAM ? defaultAggregation : Aggregation.defaultAggregation();
+                views.add(new InstrumentView(selector(instrument, type), view(aggregation, cardinalityLimit)));
+            }
+        }
+        return new MetricViewConfig(defaultAggregation, views);
+    }
+
+    private static InstrumentSelector selector(String instrument, InstrumentType type) {
+        var selector = InstrumentSelector.builder().setName(instrument);
+        if (type != null) selector.setType(type);
+        return selector.build();
+    }
+
+    private static View view(Aggregation aggregation, String cardinalityLimit) {
+        var view = View.builder().setAggregation(aggregation);
+        if (cardinalityLimit != null) view.setCardinalityLimit(Integer.parseInt(cardinalityLimit.trim()));
+        return view.build();
+    }
+
+    // The aggregation for histograms that no view matches. It's applied by the exporter (the reader asks it), not by
+    // a catch-all view: a catch-all view and a per-name view would both match and export the instrument twice.
+    public DefaultAggregationSelector defaultAggregationSelector() {
+        return DefaultAggregationSelector.getDefault().with(InstrumentType.HISTOGRAM, defaultAggregation);
+    }
+
+    public SdkMeterProviderBuilder registerViews(SdkMeterProviderBuilder builder) {
+        views.forEach(view -> builder.registerView(view.selector(), view.view()));
+        return builder;
+    }
+
+    // Per-instrument settings fall back to the global ones, e.g. .maxBuckets to otel.metrics.histogram.maxBuckets.
+    private static Aggregation aggregation(String key, String kind, Properties properties) {
+        return switch (kind.trim().toLowerCase(Locale.ROOT)) {
+            case "explicit" -> {
+                String buckets = properties.getProperty(key + ".buckets");
+                yield Aggregation.explicitBucketHistogram(buckets == null ? SECONDS_BUCKETS : parseBuckets(key, buckets));
+            }
+            case "exponential" -> Aggregation.base2ExponentialBucketHistogram(
+                    intSetting(properties, key, ".maxBuckets", DEFAULT_MAX_BUCKETS),
+                    intSetting(properties, key, ".maxScale", DEFAULT_MAX_SCALE));
+            case "drop" -> Aggregation.drop();
+            default -> throw new IllegalArgumentException(
+                    key + " must be explicit, exponential or drop, but was: " + kind);
+        };
+    }
+
+    private static int intSetting(Properties properties, String key, String suffix, int defaultValue) {
+        String value = properties.getProperty(key + suffix, properties.getProperty(HISTOGRAM_PROPERTY + suffix));
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static List<Double> parseBuckets(String key, String value) {
+        List<Double> buckets = Arrays.stream(value.split(",")).map(String::trim).map(Double::valueOf).toList();
+        for (int i = 1; i < buckets.size(); i++) {
+            if (buckets.get(i) <= buckets.get(i - 1)) {
+                throw new IllegalArgumentException(key + ".buckets must be increasing: " + value);
+            }
+        }
+        return buckets;
+    }
+
+    private static String stripSetting(String key) {
+        for (String setting : SETTINGS) {
+            if (key.endsWith(setting)) return key.substring(0, key.length() - setting.length());
+        }
+        return key;
+    }
+}
@@ -0,0 +1,101 @@
+package com.gelerion.otel.playground.config.otel;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.export.MemoryMode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.data.PointData;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/*
+Passes metrics on to the real exporter and notes which instruments have hit their cardinality limit.
+Over the limit, the SDK aggregates the remaining measurements into a single point with otel.metric.overflow=true:
+the totals stay right, but those attribute sets are not visible on their own. The SDK only logs a throttled warning, so
+the counts are exported as metrics as well (MetricsProvider.observeMetricCardinality).
+ */
+public class OverflowDetectingMetricExporter implements MetricExporter {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final AttributeKey<Boolean> OVERFLOW = AttributeKey.booleanKey("otel.metric.overflow");
+
+    private final MetricExporter delegate;
+    // By metric name: how many exports contained an overflow point, and how many points the last export had.
+    private final Map<String, AtomicLong> overflows = new ConcurrentHashMap<>();
+    private final Map<String, Integer> series = new ConcurrentHashMap<>();
+
+    public OverflowDetectingMetricExporter(MetricExporter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+        // Inspected before the delegate exports: with MemoryMode.REUSABLE_DATA the points are reused afterward.
+        for (MetricData metric : metrics) {
+            Collection<? extends PointData> points = metric.getData().getPoints();
+            series.put(metric.getName(), points.size());
+            for (PointData point : points) {
+                if (Boolean.TRUE.equals(point.getAttributes().get(OVERFLOW))) {
+                    recordOverflow(metric.getName());
+                    break;
+                }
+            }
+        }
+        return delegate.export(metrics);
+    }
+
+    private void recordOverflow(String metricName) {
+        AtomicLong count = overflows.computeIfAbsent(metricName, name -> {
+            logger.atWarn().addKeyValue("metric.name", name)
+                    .log("Cardinality limit reached, further attribute sets are aggregated into otel.metric.overflow=true");
+            return new AtomicLong();
+        });
+        count.incrementAndGet();
+    }
+
+    // Exports (collection cycles) in which the metric overflowed, per metric name.
+    public void forEachOverflow(BiConsumer<String, Long> consumer) {
+        overflows.forEach((name, count) -> consumer.accept(name, count.get()));
+    }
+
+    // Points (attribute sets) per metric in the last export.
+    public void forEachSeriesCount(BiConsumer<String, Integer> consumer) {
+        series.forEach(consumer);
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+        return delegate.getAggregationTemporality(instrumentType);
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+        return delegate.getDefaultAggregation(instrumentType);
+    }
+
+    @Override
+    public MemoryMode getMemoryMode() {
+        return delegate.getMemoryMode();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+    }
+}
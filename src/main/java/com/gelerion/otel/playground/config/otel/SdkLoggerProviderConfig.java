@@ -1,22 +1,33 @@
 package com.gelerion.otel.playground.config.otel;
 
+import com.gelerion.otel.playground.spool.Spool;
+import com.gelerion.otel.playground.spool.SpoolConfig;
+import com.gelerion.otel.playground.spool.SpoolingLogRecordExporter;
 import io.opentelemetry.exporter.otlp.http.logs.OtlpHttpLogRecordExporter;
 import io.opentelemetry.sdk.logs.SdkLoggerProvider;
 import io.opentelemetry.sdk.logs.export.BatchLogRecordProcessor;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
 import io.opentelemetry.sdk.resources.Resource;
 
 // This one is a bit different from others
 public class SdkLoggerProviderConfig {
 
-    public static SdkLoggerProvider create(Resource resource) {
+    public static SdkLoggerProvider create(Resource resource, SpoolConfig spoolConfig) {
         return SdkLoggerProvider.builder()
                 .setResource(resource)
                 .addLogRecordProcessor(
                         BatchLogRecordProcessor.builder(
-                                        OtlpHttpLogRecordExporter.builder()
-                                                .setEndpoint(SdkOtelConfig.HTTP_COLLECTOR_URL + "/v1/logs")
-                                                .build())
+                                        logRecordExporter(SdkOtelConfig.HTTP_COLLECTOR_URL + "/v1/logs", spoolConfig))
                                 .build())
                 .build();
     }
+
+    private static LogRecordExporter logRecordExporter(String endpoint, SpoolConfig spoolConfig) {
+        if (spoolConfig.enabled()) {
+            return new SpoolingLogRecordExporter(Spool.open(spoolConfig, "logs", endpoint));
+        }
+        return OtlpHttpLogRecordExporter.builder()
+                .setEndpoint(endpoint)
+                .build();
+    }
 }
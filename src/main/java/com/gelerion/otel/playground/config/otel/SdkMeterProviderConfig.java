@@ -1,8 +1,14 @@
 package com.gelerion.otel.playground.config.otel;
 
+import com.gelerion.otel.playground.spool.Spool;
+import com.gelerion.otel.playground.spool.SpoolConfig;
+import com.gelerion.otel.playground.spool.SpoolingMetricExporter;
 import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingMetricExporter;
 import io.opentelemetry.exporter.otlp.http.metrics.OtlpHttpMetricExporter;
+import io.opentelemetry.exporter.prometheus.PrometheusHttpServer;
 import io.opentelemetry.sdk.metrics.*;
+import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
+import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
 import io.opentelemetry.sdk.metrics.export.MetricExporter;
 import io.opentelemetry.sdk.metrics.export.MetricReader;
 import io.opentelemetry.sdk.metrics.export.PeriodicMetricReader;
@@ -28,7 +34,7 @@ SdkMeterProvider is configured by the application owner and consists of:
  */
 public class SdkMeterProviderConfig {
 
-    public static SdkMeterProvider create(Resource resource) {
+    public static SdkMeterProvider create(Resource resource, List<MetricReader> metricReaders) {
         // A logging exporter
         // MetricExporter otlJsonMetricExporter = OtlpJsonLoggingMetricExporter.create();
 
@@ -46,25 +52,24 @@ public class SdkMeterProviderConfig {
         // Moreover, the default buckets for an explicit bucket histogram are aligned to milliseconds for http.server.duration,
         // which renders the default buckets useless.
         // See more at https://github.com/open-telemetry/opentelemetry-specification/issues/2977
-        List<Double> buckets = List.of(0.1, 0.2, 0.3, 0.5, 0.75, 1d, 1.5, 2d, 3d, 5d, 7d);
-        Aggregation.explicitBucketHistogram(buckets);
-
-        InstrumentSelector allHistogramMetrics = InstrumentSelector.builder()
-                .setType(InstrumentType.HISTOGRAM)
-                .build();
-        View finerBucketsView = View.builder()
-                .setAggregation(Aggregation.explicitBucketHistogram(buckets)).build();
-
-        // Registers a reader, exporter, and views.
-        SdkMeterProviderBuilder builder = SdkMeterProvider.builder()
-                .setResource(resource)
-                .registerView(allHistogramMetrics, finerBucketsView)
-                // Prints to the log (a bit verbose).
-                //.registerMetricReader(periodicMetricReader(otlJsonMetricExporter))
-                // Here is where we send trace data to the collector (make sure Docker Compose and Prometheus are running).
-                .registerMetricReader(periodicMetricReader(
-                        otlpHttpMetricExporter(HTTP_COLLECTOR_URL + "/v1/metrics"))
-                );
+        // A single bucket list (0.1..7s) also fits nothing well: a 2ms DB call lands in the first bucket, and most
+        // of the buckets stay empty for fast requests. Histograms are therefore explicit (seconds buckets) or base-2
+        // exponential, globally and per instrument; see MetricViewConfig.
+        // The default histogram aggregation is the exporter's (see exporter(...)); here are only the per-name views.
+
+        // Cardinality limits: the reader caps the attribute sets per instrument and collection (by instrument type),
+        // views can override single instruments. See MetricReaderConfig for how the temporality affects memory.
+        MetricReaderConfig readerConfig = MetricReaderConfig.fromSystemProperties();
+
+        // Registers the readers (with their exporters) and views.
+        SdkMeterProviderBuilder builder = MetricViewConfig.fromSystemProperties().registerViews(SdkMeterProvider.builder())
+                .setResource(resource);
+        // Prints to the log (a bit verbose).
+        //builder.registerMetricReader(periodicMetricReader(otlJsonMetricExporter));
+        // Each reader aggregates on its own, so with both push and pull every measurement is aggregated twice.
+        for (MetricReader reader : metricReaders) {
+            builder.registerMetricReader(reader, readerConfig.cardinalityLimitSelector());
+        }
 
         // For demo purposes, we enable exemplars for all metrics. The default is trace_based.
         //SdkMeterProviderUtil.setExemplarFilter(builder, ExemplarFilter.alwaysOn());
@@ -73,13 +78,39 @@ public class SdkMeterProviderConfig {
 
     }
 
+    // Here is where we send metrics to the collector (make sure Docker Compose and Prometheus are running).
     public static MetricReader periodicMetricReader(MetricExporter metricExporter) {
         return PeriodicMetricReader.builder(metricExporter).setInterval(Duration.ofSeconds(5)).build();
     }
 
-    public static MetricExporter otlpHttpMetricExporter(String endpoint) {
+    // Pull: Prometheus scrapes http://<host>:<port>/metrics directly, without the Collector in between.
+    // Always cumulative (Prometheus has no deltas), whatever -Dotel.metrics.temporality says.
+    // OpenMetrics scrapes (Accept: application/openmetrics-text) carry exemplars of the sampled traces.
+    public static MetricReader prometheusReader(MetricExportersConfig config) {
+        return PrometheusHttpServer.builder()
+                .setHost(config.prometheusHost())
+                .setPort(config.prometheusPort())
+                .setDefaultAggregationSelector(MetricViewConfig.fromSystemProperties().defaultAggregationSelector())
+                .build();
+    }
+
+    // The exporter decides the temporality and the default aggregation per instrument type; the reader asks it.
+    // Wrapped to count the instruments that hit their cardinality limit.
+    public static OverflowDetectingMetricExporter exporter(SpoolConfig spoolConfig) {
+        String endpoint = HTTP_COLLECTOR_URL + "/v1/metrics";
+        DefaultAggregationSelector aggregationSelector = MetricViewConfig.fromSystemProperties().defaultAggregationSelector();
+        AggregationTemporalitySelector temporalitySelector = MetricReaderConfig.fromSystemProperties().temporalitySelector();
+        return new OverflowDetectingMetricExporter(spoolConfig.enabled()
+                ? new SpoolingMetricExporter(Spool.open(spoolConfig, "metrics", endpoint), aggregationSelector, temporalitySelector)
+                : otlpHttpMetricExporter(endpoint, aggregationSelector, temporalitySelector));
+    }
+
+    public static MetricExporter otlpHttpMetricExporter(String endpoint, DefaultAggregationSelector aggregationSelector,
+                                                        AggregationTemporalitySelector temporalitySelector) {
         return OtlpHttpMetricExporter.builder()
                 .setEndpoint(endpoint)
+                .setDefaultAggregationSelector(aggregationSelector)
+                .setAggregationTemporalitySelector(temporalitySelector)
                 //.addHeader("api-key", "value")
                 .setTimeout(Duration.ofSeconds(10))
                 .build();
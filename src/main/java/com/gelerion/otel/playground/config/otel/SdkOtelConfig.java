@@ -1,5 +1,10 @@
 package com.gelerion.otel.playground.config.otel;
 
+import com.gelerion.otel.playground.sampling.RateLimitingSampler;
+import com.gelerion.otel.playground.sampling.SamplingMode;
+import com.gelerion.otel.playground.sampling.TailSamplingConfig;
+import com.gelerion.otel.playground.sampling.TailSamplingSpanProcessor;
+import com.gelerion.otel.playground.spool.SpoolConfig;
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.baggage.propagation.W3CBaggagePropagator;
 import io.opentelemetry.api.common.Attributes;
@@ -10,14 +15,28 @@ import io.opentelemetry.instrumentation.log4j.appender.v2_17.OpenTelemetryAppend
 import io.opentelemetry.sdk.OpenTelemetrySdk;
 import io.opentelemetry.sdk.logs.SdkLoggerProvider;
 import io.opentelemetry.sdk.metrics.SdkMeterProvider;
+import io.opentelemetry.sdk.metrics.export.MetricReader;
 import io.opentelemetry.sdk.resources.Resource;
 import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
 import io.opentelemetry.semconv.ServerAttributes;
 import io.opentelemetry.semconv.ServiceAttributes;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SdkOtelConfig {
 
-    public static final String HTTP_COLLECTOR_URL = "http://localhost:4318";
+    // -Dotel.collector.url points the exporters elsewhere, e.g. at the StubCollector.
+    public static final String HTTP_COLLECTOR_URL = System.getProperty("otel.collector.url", "http://localhost:4318");
+
+    // Kept so the rate can be changed at runtime (POST /admin/sampling) and the samplers' counters exported.
+    // Only one of them is set, depending on the SamplingMode.
+    private static volatile RateLimitingSampler sampler;
+    private static volatile TailSamplingSpanProcessor tailSampler;
+    // Kept to export which instruments hit their cardinality limit. Only pushed metrics pass through an exporter.
+    private static volatile OverflowDetectingMetricExporter metricExporter;
 
     public static void init() {
         // Propagates context with the baggage header.
@@ -26,14 +45,39 @@ public class SdkOtelConfig {
         // A resource describes the service identity.
         Resource resource = resourceIdentity();
 
+        // Optional: a disk spool between the batch processors and the collector (off by default).
+        SpoolConfig spoolConfig = SpoolConfig.fromSystemProperties();
+
         // All things tracing.
-        SdkTracerProvider sdkTracerProvider = SdkTracerProviderConfig.create(resource);
+        // Head sampling caps new traces per second per route (-Dotel.sampler.rate sets the initial rate).
+        // Tail sampling records everything and keeps error, slow, and a baseline of other traces once they complete.
+        SpanProcessor exportProcessor = SdkTracerProviderConfig.exportProcessor(spoolConfig);
+        SdkTracerProvider sdkTracerProvider = switch (SamplingMode.fromEnvironment()) {
+            case HEAD -> {
+                sampler = RateLimitingSampler.fromSystemProperties();
+                yield SdkTracerProviderConfig.create(resource, sampler, exportProcessor);
+            }
+            case TAIL -> {
+                tailSampler = TailSamplingSpanProcessor.start(TailSamplingConfig.fromSystemProperties(), exportProcessor);
+                yield SdkTracerProviderConfig.create(resource, Sampler.alwaysOn(), tailSampler);
+            }
+        };
 
         // All things metrics.
-        SdkMeterProvider sdkMeterProvider = SdkMeterProviderConfig.create(resource);
+        // Pushed via OTLP, served to Prometheus scrapes, or both (-Dotel.metrics.exporter=otlp,prometheus).
+        MetricExportersConfig metricExporters = MetricExportersConfig.fromSystemProperties();
+        List<MetricReader> metricReaders = new ArrayList<>();
+        if (metricExporters.otlp()) {
+            metricExporter = SdkMeterProviderConfig.exporter(spoolConfig);
+            metricReaders.add(SdkMeterProviderConfig.periodicMetricReader(metricExporter));
+        }
+        if (metricExporters.prometheus()) {
+            metricReaders.add(SdkMeterProviderConfig.prometheusReader(metricExporters));
+        }
+        SdkMeterProvider sdkMeterProvider = SdkMeterProviderConfig.create(resource, metricReaders);
 
         // All things logging.
-        SdkLoggerProvider sdkLoggerProvider = SdkLoggerProviderConfig.create(resource);
+        SdkLoggerProvider sdkLoggerProvider = SdkLoggerProviderConfig.create(resource, spoolConfig);
 
         OpenTelemetrySdk openTelemetrySdk = OpenTelemetrySdk.builder()
                 .setTracerProvider(sdkTracerProvider)
@@ -43,6 +87,8 @@ public class SdkOtelConfig {
                 .build();
 
         GlobalOpenTelemetry.set(openTelemetrySdk);
+        // Our own code gets cached tracers/meters from here instead of going through GlobalOpenTelemetry every time.
+        TelemetryHandles.install(openTelemetrySdk);
 
         // This is only required for manual instrumentation.
         OpenTelemetryAppender.install(GlobalOpenTelemetry.get());
@@ -50,6 +96,21 @@ public class SdkOtelConfig {
         Runtime.getRuntime().addShutdownHook(new Thread(sdkTracerProvider::close));
     }
 
+    // Null until init() has run, or in tail sampling mode.
+    public static RateLimitingSampler sampler() {
+        return sampler;
+    }
+
+    // Null until init() has run, or in head sampling mode.
+    public static TailSamplingSpanProcessor tailSampler() {
+        return tailSampler;
+    }
+
+    // Null until init() has run, or without the OTLP exporter.
+    public static OverflowDetectingMetricExporter metricExporter() {
+        return metricExporter;
+    }
+
     private static Resource resourceIdentity() {
         return Resource.getDefault().merge(
                 Resource.create(Attributes.builder()
@@ -1,5 +1,8 @@
 package com.gelerion.otel.playground.config.otel;
 
+import com.gelerion.otel.playground.spool.Spool;
+import com.gelerion.otel.playground.spool.SpoolConfig;
+import com.gelerion.otel.playground.spool.SpoolingSpanExporter;
 import io.opentelemetry.exporter.logging.otlp.OtlpJsonLoggingSpanExporter;
 import io.opentelemetry.exporter.otlp.http.trace.OtlpHttpSpanExporter;
 import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
@@ -8,6 +11,7 @@ import io.opentelemetry.sdk.trace.SdkTracerProvider;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
 
 import java.time.Duration;
 
@@ -23,16 +27,23 @@ public class SdkTracerProviderConfig {
      - SpanExporters: Exports spans out of process (in conjunction with associated SpanProcessors).
      - SpanLimits: Controls the limits of data associated with spans.
      */
-    public static SdkTracerProvider create(Resource resource) {
+    public static SdkTracerProvider create(Resource resource, Sampler rootSampler, SpanProcessor spanProcessor) {
         return SdkTracerProvider.builder()
                 .addResource(resource)
+                // The root sampler decides for new traces; requests that arrive with a traceparent keep the caller's
+                // decision (a sampled parent is always kept), and child spans follow their parent.
+                .setSampler(Sampler.parentBased(rootSampler))
                 // Sends trace data to the logging exporter and prints it to the console in JSON format.
                 //.addSpanProcessor(SimpleSpanProcessor.create(otlpJsonLoggingSpanExporter()))
-                // Here is where we send trace data to the collector (make sure Docker Compose and Grafana Tempo are running).
-                .addSpanProcessor(batchSpanProcessor(otlpHttpSpanExporter(HTTP_COLLECTOR_URL + "/v1/traces")))
+                .addSpanProcessor(spanProcessor)
                 .build();
     }
 
+    // Here is where we send trace data to the collector (make sure Docker Compose and Grafana Tempo are running).
+    public static SpanProcessor exportProcessor(SpoolConfig spoolConfig) {
+        return batchSpanProcessor(spanExporter(HTTP_COLLECTOR_URL + "/v1/traces", spoolConfig));
+    }
+
     // A batch span processor is used to batch spans before exporting them.
     private static SpanProcessor batchSpanProcessor(SpanExporter spanExporter) {
         return BatchSpanProcessor.builder(spanExporter)
@@ -42,6 +53,13 @@ public class SdkTracerProviderConfig {
                 .build();
     }
 
+    // With the spool enabled, batches go to disk first and are replayed to the collector in the background.
+    private static SpanExporter spanExporter(String endpoint, SpoolConfig spoolConfig) {
+        return spoolConfig.enabled()
+                ? new SpoolingSpanExporter(Spool.open(spoolConfig, "traces", endpoint))
+                : otlpHttpSpanExporter(endpoint);
+    }
+
     // From opentelemetry-exporter-* libs.
     private static SpanExporter otlpHttpSpanExporter(String endpoint) {
         return OtlpHttpSpanExporter.builder()
@@ -0,0 +1,100 @@
+package com.gelerion.otel.playground.config.otel;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.metrics.Meter;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.propagation.ContextPropagators;
+import io.opentelemetry.semconv.SchemaUrls;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+Tracers and meters are meant to be obtained once per instrumentation scope and reused.
+GlobalOpenTelemetry.tracerBuilder(...).build() on every span goes through the global lookup and the SDK's
+component registry (a map lookup keyed by name/version/schema URL) each time, which adds up on the request path.
+
+The handles are resolved once per scope and cached. SdkOtelConfig.init() installs the SDK here:
+  - Before install(), callers get no-op handles, and GlobalOpenTelemetry is deliberately left untouched
+    (calling GlobalOpenTelemetry.get() too early would lock in a no-op instance, and the later set(...) would fail).
+  - install() swaps the whole cache at once, so code that asks for a tracer per call (filters, DbOperations,
+    RemoteClient) picks up the SDK tracer on the next call.
+Handles already handed out are not rebound: a tracer or meter kept in a field before install() stays no-op. For
+tracers that is harmless here, as every caller asks per call. Meters are different: the instruments (counters,
+histograms, gauge callbacks) are bound to the meter they were built from, and rebinding them would mean wrapping every
+instrument type in a delegate. So this deliberately does not cover "init() after first use" for meters; install()
+fails fast instead: it throws an IllegalStateException if a meter was handed out before the SDK was installed, and
+anything that creates instruments (e.g., MetricsProvider) must be constructed after init(). Without an SDK at all
+(install() never called), the no-op meter is fine.
+ */
+public class TelemetryHandles {
+    public static final String SCOPE_NAME = "com.gelerion.otel.playground.http";
+    private static final String SCOPE_VERSION = "1.0.0";
+
+    private static volatile Handles current = new Handles(OpenTelemetry.noop(), false);
+
+    public static void install(OpenTelemetry openTelemetry) {
+        Handles previous = current;
+        if (!previous.installed && previous.meterHandedOut) {
+            throw new IllegalStateException("A meter was used before the SDK was installed, so the instruments built "
+                    + "from it would stay no-op: create MetricsProvider (and other instruments) after SdkOtelConfig.init()");
+        }
+        current = new Handles(openTelemetry, true);
+    }
+
+    public static Tracer tracer() {
+        return current.tracer;
+    }
+
+    public static Tracer tracer(String scopeName) {
+        Handles handles = current;
+        return SCOPE_NAME.equals(scopeName) ? handles.tracer : handles.tracers.computeIfAbsent(scopeName, handles::newTracer);
+    }
+
+    public static Meter meter() {
+        Handles handles = current;
+        if (!handles.installed) handles.meterHandedOut = true;
+        return handles.meter;
+    }
+
+    public static Meter meter(String scopeName) {
+        Handles handles = current;
+        if (!handles.installed) handles.meterHandedOut = true;
+        return SCOPE_NAME.equals(scopeName) ? handles.meter : handles.meters.computeIfAbsent(scopeName, handles::newMeter);
+    }
+
+    public static ContextPropagators propagators() {
+        return current.openTelemetry.getPropagators();
+    }
+
+    private static final class Handles {
+        private final OpenTelemetry openTelemetry;
+        private final boolean installed;
+        private final Tracer tracer;
+        private final Meter meter;
+        private final ConcurrentMap<String, Tracer> tracers = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<>();
+        private volatile boolean meterHandedOut;
+
+        private Handles(OpenTelemetry openTelemetry, boolean installed) {
+            this.openTelemetry = openTelemetry;
+            this.installed = installed;
+            this.tracer = newTracer(SCOPE_NAME);
+            this.meter = newMeter(SCOPE_NAME);
+        }
+
+        private Tracer newTracer(String scopeName) {
+            return openTelemetry.tracerBuilder(scopeName)
+                    .setInstrumentationVersion(SCOPE_VERSION)
+                    .setSchemaUrl(SchemaUrls.V1_37_0) // See the README for more details.
+                    .build();
+        }
+
+        private Meter newMeter(String scopeName) {
+            return openTelemetry.meterBuilder(scopeName)
+                    .setInstrumentationVersion(SCOPE_VERSION)
+                    .setSchemaUrl(SchemaUrls.V1_37_0) // See the README for more details.
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.gelerion.otel.playground.config.server;
+
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+// Replaces Spark's embedded Jetty factory so we control (and can observe) the thread pool.
+// Must be called before the first route or filter is mapped, since Spark ignites the server lazily on that call.
+public class JettyServerConfig {
+
+    // The same sizing Jetty uses when Spark creates the pool itself.
+    private static final int MAX_THREADS = 200;
+    private static final int MIN_THREADS = 8;
+    private static final int IDLE_TIMEOUT_MILLIS = 60_000;
+
+    public static void configure(ThreadingMode mode, MetricsProvider metricsProvider) {
+        ThreadPool threadPool = threadPool(mode);
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory().withThreadPool(threadPool));
+
+        metricsProvider.observeThreadPool(threadPool, mode);
+    }
+
+    private static ThreadPool threadPool(ThreadingMode mode) {
+        return switch (mode) {
+            case PLATFORM -> {
+                QueuedThreadPool pool = new QueuedThreadPool(MAX_THREADS, MIN_THREADS, IDLE_TIMEOUT_MILLIS);
+                pool.setName("jetty-qtp");
+                yield pool;
+            }
+            case VIRTUAL -> new VirtualThreadPool();
+        };
+    }
+}
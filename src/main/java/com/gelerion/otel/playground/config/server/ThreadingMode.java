@@ -0,0 +1,24 @@
+package com.gelerion.otel.playground.config.server;
+
+import java.util.Locale;
+
+// Selects which threads execute the request handling (filters + routes).
+// Switch with -Dserver.threading=virtual (or the SERVER_THREADING env variable), e.g. `make up threading=virtual`.
+public enum ThreadingMode {
+    // Spark's default: Jetty's bounded QueuedThreadPool. Every Thread.sleep pins one of its platform threads.
+    PLATFORM,
+    // One virtual thread per task. Blocking calls unmount the virtual thread instead of holding a pool slot.
+    VIRTUAL;
+
+    public static ThreadingMode fromEnvironment() {
+        String value = System.getProperty("server.threading", System.getenv("SERVER_THREADING"));
+        if (value == null || value.isBlank()) {
+            return PLATFORM;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public String attributeValue() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,87 @@
+package com.gelerion.otel.playground.config.server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Jetty 9.4 (the version Spark ships with) predates Loom, so there is no built-in virtual thread support.
+This pool runs every Jetty task (acceptors, selectors, and request handling) on its own virtual thread,
+similar to what Jetty 12's VirtualThreadPool does.
+
+ThreadLocal-based state keeps working: Spark runs the before filters, the route, and the afterAfter cleanup
+on the same thread, so the OTel Scopes (span, FeatureFlag) and the Log4j ThreadContext (MDC) are set and cleared
+on one virtual thread. A virtual thread lives as long as its Jetty task, not necessarily one request: the acceptor
+and selector tasks run for the life of the server, and a connection's task may go on to the next request on the same
+keep-alive connection. So it's the afterAfter cleanup (closing the scopes, clearing the MDC) that keeps one request's
+state out of the next, as with the platform pool.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, TryExecutor {
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("jetty-vt-", 0).factory());
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder started = new LongAdder();
+
+    @Override
+    public void execute(Runnable task) {
+        started.increment();
+        active.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+    }
+
+    // There is always a "thread" available, so Jetty's EatWhatYouKill strategy may hand off work immediately.
+    @Override
+    public boolean tryExecute(Runnable task) {
+        execute(task);
+        return true;
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            // Keeps waiting until the pool is stopped.
+        }
+    }
+
+    // Virtual threads that are currently running a task (including those parked in Thread.sleep).
+    @Override
+    public int getThreads() {
+        return active.get();
+    }
+
+    // Virtual threads are never parked idle in a pool.
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    public long getStartedTasks() {
+        return started.sum();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+}
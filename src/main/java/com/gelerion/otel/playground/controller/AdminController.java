@@ -0,0 +1,46 @@
+package com.gelerion.otel.playground.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.gelerion.otel.playground.sampling.RateLimitingSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+
+import static com.gelerion.otel.playground.Server.JSON;
+
+// Runtime knobs, so a running experiment doesn't need a restart.
+//   curl localhost:8080/admin/sampling
+//   curl -X POST 'localhost:8080/admin/sampling?rate=10&burst=20'
+public class AdminController {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final RateLimitingSampler sampler;
+
+    public AdminController(RateLimitingSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public String samplingRate(Request request, Response response) throws JsonProcessingException {
+        return JSON.writeValueAsString(Map.of("rate", sampler.rate(), "burst", sampler.burst()));
+    }
+
+    // burst defaults to the new rate (one second's worth of traces).
+    public String updateSamplingRate(Request request, Response response) throws JsonProcessingException {
+        String rate = request.queryParams("rate");
+        String burst = request.queryParams("burst");
+        try {
+            if (rate == null) throw new IllegalArgumentException("rate is required");
+            double newRate = Double.parseDouble(rate);
+            sampler.setRate(newRate, burst != null ? Double.parseDouble(burst) : newRate);
+        } catch (IllegalArgumentException e) {
+            response.status(400);
+            return JSON.writeValueAsString(Map.of("error", "Expected ?rate=<traces per second>[&burst=<traces>]"));
+        }
+        logger.atInfo().addKeyValue("sampler", sampler.getDescription()).log("Sampling rate changed");
+        return samplingRate(request, response);
+    }
+}
@@ -0,0 +1,88 @@
+package com.gelerion.otel.playground.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonFactoryBuilder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+
+import static com.gelerion.otel.playground.Server.JSON;
+
+/*
+Writes the /v1/hello response body, {"message":...,"user":...,"recommendations":...}, straight to UTF-8 bytes.
+
+JSON.writeValueAsString(Map.of(...)) built a map, serialized it into a char buffer, copied that into a String, and
+Spark then encoded the String into yet another byte[]. Here a JsonGenerator writes into a ByteArrayBuilder, both kept
+per request thread and reused by its next request; the field names are pre-encoded (SerializedString), and the only
+per-request allocation is the final byte[].
+
+The route returns that byte[] and Spark's BytesSerializer writes it to the servlet output stream as is. Writing to
+response.raw().getOutputStream() from the route would be one copy less, but Spark runs the after filters (which set
+the content type and record the metrics) after the route, and the first write commits the headers.
+
+The output is byte-for-byte what ObjectMapper writes for the same fields (same escaping), in a fixed order: Map.of
+iterated in an order that changed from one JVM run to the next.
+ */
+final class HelloResponseWriter {
+    private static final SerializedString MESSAGE = new SerializedString("message");
+    private static final SerializedString USER = new SerializedString("user");
+    private static final SerializedString RECOMMENDATIONS = new SerializedString("recommendations");
+
+    // ObjectMapper's settings, minus the space a generator puts between two root-level values (it is reused).
+    private static final JsonFactory FACTORY = new JsonFactoryBuilder(JSON.getFactory())
+            .rootValueSeparator((String) null)
+            .build();
+
+    private static final ThreadLocal<Encoder> ENCODERS = ThreadLocal.withInitial(Encoder::new);
+
+    private record Encoder(ByteArrayBuilder buffer, JsonGenerator generator) {
+        Encoder() {
+            this(new ByteArrayBuilder(256));
+        }
+
+        Encoder(ByteArrayBuilder buffer) {
+            this(buffer, createGenerator(buffer));
+        }
+
+        private static JsonGenerator createGenerator(ByteArrayBuilder buffer) {
+            try {
+                return FACTORY.createGenerator(buffer);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot create a JSON generator", e);
+            }
+        }
+    }
+
+    private HelloResponseWriter() {
+    }
+
+    static byte[] write(String message, String user, String recommendations) throws IOException {
+        // Virtual threads are cheap and short-lived (at most a keep-alive connection's few requests, see
+        // VirtualThreadPool), and there can be millions of them: a ThreadLocal encoder would be created for nearly every
+        // request anyway and kept with each thread until it ends. A fresh one per request costs about the same, and leaves
+        // nothing behind.
+        boolean reusable = !Thread.currentThread().isVirtual();
+        Encoder encoder = reusable ? ENCODERS.get() : new Encoder();
+        try {
+            JsonGenerator generator = encoder.generator();
+            generator.writeStartObject();
+            generator.writeFieldName(MESSAGE);
+            generator.writeString(message);
+            generator.writeFieldName(USER);
+            generator.writeString(user);
+            generator.writeFieldName(RECOMMENDATIONS);
+            generator.writeString(recommendations);
+            generator.writeEndObject();
+            generator.flush();
+            return encoder.buffer().toByteArray();
+        } catch (IOException | RuntimeException e) {
+            // The generator may be stuck in the middle of an object; the next request starts over.
+            if (reusable) ENCODERS.remove();
+            throw e;
+        } finally {
+            encoder.buffer().reset();
+        }
+    }
+}
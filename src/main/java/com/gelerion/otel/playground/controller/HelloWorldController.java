@@ -1,10 +1,19 @@
 package com.gelerion.otel.playground.controller;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.gelerion.otel.playground.cache.CacheConfig;
+import com.gelerion.otel.playground.cache.ReadThroughCache;
 import com.gelerion.otel.playground.clients.RemoteClient;
+import com.gelerion.otel.playground.clients.RemoteClientConfig;
+import com.gelerion.otel.playground.concurrency.ContextPropagatingExecutorService;
+import com.gelerion.otel.playground.concurrency.FanOut;
 import com.gelerion.otel.playground.feature.flags.FeatureFlag;
+import com.gelerion.otel.playground.feature.flags.FlaggedKey;
 import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.repository.ConnectionPool;
 import com.gelerion.otel.playground.repository.DbOperations;
+import com.gelerion.otel.playground.resilience.CallNotPermittedException;
+import com.gelerion.otel.playground.resilience.DependencyGuard;
+import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
@@ -14,30 +23,53 @@ import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
-import static com.gelerion.otel.playground.Server.JSON;
 import static io.opentelemetry.api.common.AttributeKey.stringKey;
 
 public class HelloWorldController {
     private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-    private final DbOperations dbOperations;
-    private final RemoteClient recommendationsClient;
+    // Served instead when a dependency's circuit breaker is open (or its bulkhead full), see degradeIfRejected.
+    private static final String USER_UNAVAILABLE = "User details unavailable";
+    private static final String NO_RECOMMENDATIONS = "";
+    private static final AttributeKey<String> DEGRADED_DEPENDENCY = stringKey("dependency");
+    private static final AttributeKey<String> DEGRADED_REASON = stringKey("reason");
 
-    public HelloWorldController(MetricsProvider metricsProvider) {
-        this.dbOperations = new DbOperations(metricsProvider);
-        this.recommendationsClient = new RemoteClient(metricsProvider);
+    // Read-through caches in front of the DB and the recommendations service, keyed by user and feature flag: a value
+    // loaded under a fault profile is never served to another profile's requests. The TTLs are seconds, not minutes,
+    // since the load generator cycles through a handful of names: with longer ones the dependencies (and their faults
+    // and breakers) would barely be called. A 5xx from the recommendations service is cached only briefly.
+    private final ReadThroughCache<FlaggedKey<String>, String> userCache;
+    private final ReadThroughCache<FlaggedKey<String>, String> recommendationsCache;
+    // Runs the fan-out tasks, a virtual thread each, with the request's context.
+    private final ContextPropagatingExecutorService fanOutExecutor;
+
+    public HelloWorldController(MetricsProvider metricsProvider, ConnectionPool connectionPool, RemoteClientConfig recommendationsConfig) {
+        DbOperations dbOperations = new DbOperations(metricsProvider, connectionPool);
+        RemoteClient recommendationsClient = new RemoteClient(recommendationsConfig, metricsProvider);
+
+        this.fanOutExecutor = ContextPropagatingExecutorService.virtual("fan-out", metricsProvider);
+        this.userCache = new ReadThroughCache<>(
+                CacheConfig.fromSystemProperties("users", 10_000, Duration.ofSeconds(5), Duration.ofSeconds(4), Duration.ofSeconds(1)),
+                metricsProvider, key -> key.apply(dbOperations::findUserByName), user -> false, key -> key.flag().cacheTtl());
+        this.recommendationsCache = new ReadThroughCache<>(
+                CacheConfig.fromSystemProperties("recommendations", 10_000, Duration.ofSeconds(2), Duration.ofMillis(1500), Duration.ofMillis(500)),
+                metricsProvider, key -> key.apply(recommendationsClient::callRecommendations), RemoteClient.ERROR_RESPONSE::equals,
+                key -> key.flag().cacheTtl());
     }
 
     // When the code reaches this method, it already:
     //  1. Has a valid active span with a trace context created by OtelContextPropagationFilter (either created or derived from propagators).
-    //  2. Has an SLF4J MDC context set by LoggingTraceContextSetterFilter.
+    //  2. Has an SLF4J MDC context set by LoggingTraceContextSetterFilter (trace ids come from OpenTelemetryContextDataProvider).
     //  3. Has metrics initialized and tracked by HttpMetricsRecorder.
     // Therefore, we only need to track outgoing interactions and internal flows for better traceability.
-    public String hello(Request request, Response response) throws JsonProcessingException {
+    public byte[] hello(Request request, Response response) throws IOException, InterruptedException {
         // Adds an attribute example.
         Span.current().setAttribute(CodeAttributes.CODE_FUNCTION_NAME, "HelloWorldController/hello");
 
@@ -48,35 +80,61 @@ public class HelloWorldController {
         logger.atInfo().addKeyValue("user.name", name).log("Request received for user {}", name);
         var message = "Hello, " + name + "!";
 
-        sleepQuietly();
+        // The controller's own work, as the feature flag's profile has it (a delay, and with some profiles a failure).
+        injectFaults();
 
-        // Simulates a DB operation.
-        logger.atInfo().addKeyValue("user.name", name).log("Find user by name");
-        String user = dbOperations.findUserByName(name);
-        logger.atInfo().log("{}", user);
+        // The DB lookup and the recommendations call are independent, so they run concurrently.
+        // The request context (span, baggage, MDC, feature flag) is carried into both tasks, hence both CLIENT spans
+        // are still children of the SERVER span. If either call fails, the other one is cancelled; a call that the
+        // dependency's circuit breaker or bulkhead rejects doesn't fail, it answers with a fallback right away.
+        String user;
+        String recommendations;
+        try (FanOut fanOut = new FanOut(fanOutExecutor)) {
+            // Looks the user up in the (embedded) database, unless it's cached.
+            Future<String> userTask = fanOut.fork(() -> {
+                logger.atInfo().addKeyValue("user.name", name).log("Find user by name");
+                return degradeIfRejected(() -> userCache.get(FlaggedKey.current(name)), USER_UNAVAILABLE);
+            });
+
+            // Calls the recommendations service over HTTP, unless it's cached.
+            Future<String> recommendationsTask = fanOut.fork(() -> {
+                logger.atInfo().addKeyValue("user.name", name).log("Request recommendations for user");
+                return degradeIfRejected(() -> recommendationsCache.get(FlaggedKey.current(name)), NO_RECOMMENDATIONS);
+            });
 
-        // Simulates an outgoing HTTP request.
-        logger.atInfo().addKeyValue("user.name", name).log("Request recommendations for user");
-        String recommendations = recommendationsClient.callRecommendations(name);
+            fanOut.join();
+            user = userTask.resultNow();
+            recommendations = recommendationsTask.resultNow();
+        }
+        logger.atInfo().log("{}", user);
         logger.atInfo().log("Recommendations for user {}", recommendations);
 
         response.status(200);
         Span.current().setStatus(StatusCode.OK);
 
-        return JSON.writeValueAsString(Map.of(
-                "message", message,
-                "user", user,
-                "recommendations", recommendations));
+        // Serialized straight to UTF-8 bytes, which Spark writes out as they are.
+        return HelloResponseWriter.write(message, user, recommendations);
+    }
+
+    // A degraded response is still a 200. The "Degraded response" event on the SERVER span tells it apart in traces.
+    private static String degradeIfRejected(Supplier<String> lookup, String fallback) {
+        try {
+            return lookup.get();
+        } catch (CallNotPermittedException e) {
+            Span.current().addEvent("Degraded response", Attributes.of(
+                    DEGRADED_DEPENDENCY, e.dependency(), DEGRADED_REASON, DependencyGuard.attributeValue(e.reason())));
+            logger.atWarn().addKeyValue("dependency", e.dependency()).log("{}, serving a fallback", e.getMessage());
+            return fallback;
+        }
     }
 
-    private void sleepQuietly() {
-        FeatureFlag flag = FeatureFlag.current();
+    // Interrupted while sleeping out the injected delay (e.g. Jetty is stopping): gives up on the request.
+    private void injectFaults() {
         try {
-            int delay = ThreadLocalRandom.current().nextInt(
-                    flag.controllerMinLatency(), 
-                    flag.controllerMaxLatency()
-            );
-            Thread.sleep(delay);
-        } catch (InterruptedException ignore) {}
+            FeatureFlag.current().controller().inject("Request handling failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Request handling cancelled");
+        }
     }
 }
\ No newline at end of file
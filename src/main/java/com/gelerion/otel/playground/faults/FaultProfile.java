@@ -0,0 +1,65 @@
+package com.gelerion.otel.playground.faults;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+What to inject into calls to one dependency (the controller itself, the DB, the recommendations service): a delay
+drawn from a LatencyDistribution, then a failure at errorRate.
+  - failure=fast     the call fails right after its delay (a refused connection, a 500),
+  - failure=timeout  the call hangs for `hang` first, so it's the caller's timeout that fires (a dropped packet).
+  - burst            for `duration` out of every `period` (aligned to the wall clock, so the server and a standalone
+                     stub burst together), the error rate is burst.errorRate instead: an outage, not a steady drizzle.
+  - ramp             right after the profiles are loaded (start-up, or a reload), delays are `factor` times longer,
+                     easing off linearly to normal over `duration`: a cold JIT, cold caches, a fresh connection pool.
+
+The delays are plain Thread.sleep calls and no monitor is held around them, so on a virtual thread (fan-out tasks, the
+stub service, Jetty with -Dserver.threading=virtual) a waiting call parks and frees its carrier: thousands of slow calls
+in flight cost memory, not threads.
+ */
+public record FaultProfile(LatencyDistribution latency, double errorRate, FailureMode failure, Duration hang,
+                           Burst burst, Ramp ramp) {
+
+    public enum FailureMode { FAST, TIMEOUT }
+
+    public record Burst(long periodMs, long durationMs, double errorRate) {
+        public static final Burst NONE = new Burst(0, 0, 0);
+
+        boolean active(long nowMillis) {
+            return periodMs > 0 && nowMillis % periodMs < durationMs;
+        }
+    }
+
+    public record Ramp(long startNanos, long durationNanos, double factor) {
+        public static final Ramp NONE = new Ramp(0, 0, 1);
+
+        double multiplier(long nowNanos) {
+            long elapsed = nowNanos - startNanos;
+            if (durationNanos <= 0 || elapsed >= durationNanos) return 1;
+            return factor - (factor - 1) * ((double) elapsed / durationNanos);
+        }
+    }
+
+    // The delay for one call, ramp included.
+    public long latencyMillis() {
+        long millis = latency.sampleMillis(ThreadLocalRandom.current());
+        return ramp == Ramp.NONE ? millis : Math.round(millis * ramp.multiplier(System.nanoTime()));
+    }
+
+    // Whether this call fails, burst included.
+    public boolean failsNow() {
+        double rate = burst.active(System.currentTimeMillis()) ? burst.errorRate : errorRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    // Waits out the delay, then returns, or throws an InjectedFaultException after the hang (failure=timeout).
+    public void inject(String failureMessage) throws InterruptedException {
+        Thread.sleep(latencyMillis());
+        if (!failsNow()) return;
+        if (failure == FailureMode.TIMEOUT) {
+            Thread.sleep(hang.toMillis());
+            throw new InjectedFaultException(failureMessage + " (no answer after " + hang.toMillis() + "ms)");
+        }
+        throw new InjectedFaultException(failureMessage);
+    }
+}
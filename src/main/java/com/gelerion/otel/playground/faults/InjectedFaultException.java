@@ -0,0 +1,8 @@
+package com.gelerion.otel.playground.faults;
+
+// A failure injected by a FaultProfile, as opposed to a real one.
+public class InjectedFaultException extends RuntimeException {
+    public InjectedFaultException(String message) {
+        super(message);
+    }
+}
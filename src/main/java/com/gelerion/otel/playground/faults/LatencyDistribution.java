@@ -0,0 +1,107 @@
+package com.gelerion.otel.playground.faults;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+Where an injected delay is drawn from. Written in the feature flag profiles as <type>:<param>=<value>,...
+  uniform:min=200,max=800                     flat between min and max (max exclusive), no tail at all
+  lognormal:median=300,sigma=0.6              most calls near the median, a long right tail; sigma 0.5-1 looks like
+                                              a typical service (p99 is median * e^(2.33 * sigma))
+  pareto:scale=200,shape=1.5                  never below scale, a power-law tail: the lower the shape, the heavier
+                                              (below 2 the variance is infinite, as with GC pauses and retries)
+  bimodal:fast=200,slow=2000,slowRatio=0.05   two log-normal modes (sigma defaults to 0.25), e.g. cache hits and misses
+Every type but uniform takes max=<ms> (default: 30000), so a single draw can't stall a request forever.
+ */
+public sealed interface LatencyDistribution {
+    long DEFAULT_MAX_MS = 30_000;
+
+    // One delay in milliseconds.
+    long sampleMillis(ThreadLocalRandom random);
+
+    record Uniform(long min, long max) implements LatencyDistribution {
+        public Uniform {
+            if (min < 0 || min >= max) throw new IllegalArgumentException("uniform needs 0 <= min < max");
+        }
+
+        @Override
+        public long sampleMillis(ThreadLocalRandom random) {
+            return random.nextLong(min, max);
+        }
+    }
+
+    record LogNormal(double median, double sigma, long max) implements LatencyDistribution {
+        public LogNormal {
+            if (median <= 0 || sigma < 0 || max <= 0) throw new IllegalArgumentException("lognormal needs median > 0, sigma >= 0, max > 0");
+        }
+
+        @Override
+        public long sampleMillis(ThreadLocalRandom random) {
+            return Math.min(max, Math.round(median * Math.exp(sigma * random.nextGaussian())));
+        }
+    }
+
+    record Pareto(double scale, double shape, long max) implements LatencyDistribution {
+        public Pareto {
+            if (scale <= 0 || shape <= 0 || max <= 0) throw new IllegalArgumentException("pareto needs scale > 0, shape > 0, max > 0");
+        }
+
+        // Inverse transform: scale / U^(1/shape), U in (0, 1].
+        @Override
+        public long sampleMillis(ThreadLocalRandom random) {
+            double u = 1.0 - random.nextDouble();
+            return Math.min(max, Math.round(scale / Math.pow(u, 1.0 / shape)));
+        }
+    }
+
+    record Bimodal(LogNormal fast, LogNormal slow, double slowRatio) implements LatencyDistribution {
+        public Bimodal {
+            if (slowRatio < 0 || slowRatio > 1) throw new IllegalArgumentException("bimodal needs 0 <= slowRatio <= 1");
+        }
+
+        @Override
+        public long sampleMillis(ThreadLocalRandom random) {
+            return (random.nextDouble() < slowRatio ? slow : fast).sampleMillis(random);
+        }
+    }
+
+    // Parses a spec as written in the profiles file; key names the setting in error messages.
+    static LatencyDistribution parse(String key, String spec) {
+        int colon = spec.indexOf(':');
+        String type = colon > 0 ? spec.substring(0, colon).trim() : spec.trim();
+        Map<String, Double> params = new HashMap<>();
+        try {
+            if (colon > 0) {
+                for (String param : spec.substring(colon + 1).split(",")) {
+                    int eq = param.indexOf('=');
+                    if (eq <= 0) throw new IllegalArgumentException("expected <param>=<value>, got " + param.trim());
+                    params.put(param.substring(0, eq).trim(), Double.parseDouble(param.substring(eq + 1).trim()));
+                }
+            }
+            long max = Math.round(params.getOrDefault("max", (double) DEFAULT_MAX_MS));
+            return switch (type) {
+                case "uniform" -> new Uniform(Math.round(required(params, "min")), Math.round(required(params, "max")));
+                case "lognormal" -> new LogNormal(required(params, "median"), required(params, "sigma"), max);
+                case "pareto" -> new Pareto(required(params, "scale"), required(params, "shape"), max);
+                case "bimodal" -> {
+                    double sigma = params.getOrDefault("sigma", 0.25);
+                    yield new Bimodal(new LogNormal(required(params, "fast"), sigma, max),
+                            new LogNormal(required(params, "slow"), sigma, max),
+                            required(params, "slowRatio"));
+                }
+                default -> throw new IllegalArgumentException("unknown distribution " + type
+                        + ", expected uniform, lognormal, pareto or bimodal");
+            };
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included.
+            throw new IllegalArgumentException(key + ": " + e.getMessage() + " in " + spec, e);
+        }
+    }
+
+    private static double required(Map<String, Double> params, String name) {
+        Double value = params.get(name);
+        if (value == null) throw new IllegalArgumentException("missing " + name);
+        return value;
+    }
+}
@@ -1,67 +1,105 @@
 package com.gelerion.otel.playground.feature.flags;
 
-import spark.Request;
+import com.gelerion.otel.playground.faults.FaultProfile;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.ContextKey;
+import io.opentelemetry.context.ImplicitContextKeyed;
 
-public class FeatureFlag {
-    private static final ThreadLocal<FeatureFlag> CURRENT = new ThreadLocal<>();
-    
-    private final boolean highLatency;
+import java.time.Duration;
 
-    private FeatureFlag(boolean highLatency) {
-        this.highLatency = highLatency;
+/*
+The faults a request runs with (see FaultProfile), selected by the X-Feature-Flag header (e.g. "high-latency,no-cache").
+The profiles themselves come from a config file, see FeatureFlagProfiles.
+
+A FeatureFlag is immutable and interned: every request with the same header shares one instance, so resolving the
+header and reading the flag allocates nothing. It lives in the OTel Context (FeatureFlagBeforeFilter makes it current),
+so it follows the request wherever the Context goes: wrapped tasks, RequestContextSnapshot, CompletableFuture callbacks.
+ */
+public final class FeatureFlag implements ImplicitContextKeyed {
+    private static final ContextKey<FeatureFlag> KEY = ContextKey.named("feature-flag");
+
+    public static final String HEADER = "X-Feature-Flag";
+    // Carries the flag in W3C baggage when -Dfeature.flags.baggage=true, see FeatureFlagBeforeFilter.
+    public static final String BAGGAGE_KEY = "feature.flag";
+
+    private final String name;
+    private final boolean cacheBypass;
+    private final Duration cacheTtl;
+    private final FaultProfile controller;
+    private final FaultProfile db;
+    private final FaultProfile client;
+
+    FeatureFlag(String name, boolean cacheBypass, Duration cacheTtl, FaultProfile controller, FaultProfile db, FaultProfile client) {
+        this.name = name;
+        this.cacheBypass = cacheBypass;
+        this.cacheTtl = cacheTtl;
+        this.controller = controller;
+        this.db = db;
+        this.client = client;
     }
 
-    public static void initializeFromRequest(Request request) {
-        String header = request.headers("X-Feature-Flag");
-        boolean isHighLatency = "high-latency".equalsIgnoreCase(header);
-        CURRENT.set(new FeatureFlag(isHighLatency));
+    // The header is a comma-separated list of profile names, e.g. "X-Feature-Flag: high-latency,no-cache".
+    // Unknown names are ignored; no header (or only unknown names) is the baseline.
+    public static FeatureFlag fromHeader(String header) {
+        return FeatureFlagProfiles.resolve(header);
     }
 
+    // The flag of the current Context, or the baseline.
     public static FeatureFlag current() {
-        FeatureFlag flag = CURRENT.get();
-        return flag != null ? flag : baseline();
+        return fromContext(Context.current());
+    }
+
+    public static FeatureFlag fromContext(Context context) {
+        FeatureFlag flag = context.get(KEY);
+        return flag != null ? flag : FeatureFlagProfiles.baseline();
     }
 
-    public static void clear() {
-        CURRENT.remove();
+    @Override
+    public Context storeInContext(Context context) {
+        return context.with(KEY, this);
     }
 
-    private static FeatureFlag baseline() {
-        return new FeatureFlag(false);
+    // The normalized header value (profile names, comma-separated), so it can be forwarded to a downstream service.
+    // Null for the baseline.
+    public String toHeader() {
+        return isBaseline() ? null : name;
     }
 
-    // Controller latency
-    public int controllerMinLatency() {
-        return highLatency ? 300 : 50;
+    public boolean isBaseline() {
+        return FeatureFlagProfiles.BASELINE.equals(name);
     }
 
-    public int controllerMaxLatency() {
-        return highLatency ? 1000 : 150;
+    public String name() {
+        return name;
     }
 
-    // DB config
-    public int dbMinLatency() {
-        return highLatency ? 1000 : 200;
+    // Skips the read-through caches, so every request hits the DB and the recommendations service (for A/B runs).
+    public boolean cacheBypass() {
+        return cacheBypass;
     }
 
-    public int dbMaxLatency() {
-        return highLatency ? 3000 : 800;
+    // How long the read-through caches keep a value loaded under this flag, or null for each cache's own TTL. The fault
+    // scenarios set it low, so their faults reach the request path instead of hiding behind cached values.
+    public Duration cacheTtl() {
+        return cacheTtl;
     }
 
-    public double dbErrorRate() {
-        return 0.10; // 10% for both modes
+    // What is injected into the controller itself, the DB lookup, and the recommendations service (by the stub).
+    public FaultProfile controller() {
+        return controller;
     }
 
-    // Client config
-    public int clientMinLatency() {
-        return highLatency ? 1000 : 200;
+    public FaultProfile db() {
+        return db;
     }
 
-    public int clientMaxLatency() {
-        return highLatency ? 2000 : 800;
+    public FaultProfile client() {
+        return client;
     }
 
-    public double clientErrorRate() {
-        return 0.10; // 10% for both modes
+    @Override
+    public String toString() {
+        return "FeatureFlag{" + name + ", cacheBypass=" + cacheBypass + ", cacheTtl=" + cacheTtl
+                + ", controller=" + controller + ", db=" + db + ", client=" + client + "}";
     }
 }
@@ -0,0 +1,358 @@
+package com.gelerion.otel.playground.feature.flags;
+
+import com.gelerion.otel.playground.faults.FaultProfile;
+import com.gelerion.otel.playground.faults.LatencyDistribution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+The feature flag profiles, loaded from a properties file:
+  -Dfeature.flags.file       path of the profiles file (default: feature-flags.properties on the classpath)
+  -Dfeature.flags.reloadMs   how often that file is checked for changes (default: 2000, 0 turns reloading off);
+                             the classpath default is never reloaded
+
+"baseline" applies to every request, and each named profile overrides some of its settings:
+  baseline.db.latencyMs=200-800
+  high-latency.db.latencyMs=1000-3000
+  no-cache.cacheBypass=true
+A header with several names applies them in order. Settings, each per dependency (controller, db, client), see
+FaultProfile and LatencyDistribution:
+  <dep>.latency=lognormal:median=300,sigma=0.6    or <dep>.latencyMs=200-800 for a uniform delay
+  <dep>.errorRate=0.1                             0..1
+  <dep>.failure=fast|timeout                      <dep>.hangMs=30000 (how long a timeout hangs)
+  <dep>.burst.periodMs / .durationMs / .errorRate  error bursts
+  <dep>.rampMs / <dep>.rampFactor                  slow start after a (re)load
+and cacheBypass, cacheTtlMs (how long the caches keep values loaded under the flag; unset: each cache's own TTL).
+Whatever the baseline leaves out keeps the built-in default.
+
+Resolved flags are interned per header value (and per normalized name, so "High-Latency " and "high-latency" share
+an instance): after the first request with a given header, resolving it is one map lookup. At most MAX_INTERNED values
+are kept per generation; beyond that (a client sending random headers) they're resolved, and allocated, every time.
+
+A reload swaps in a new generation of profiles at once. Requests in flight keep the FeatureFlag they resolved, new
+requests get the new profiles. A file that doesn't parse is logged and the current profiles stay.
+ */
+public final class FeatureFlagProfiles {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    static final String BASELINE = "baseline";
+    private static final String RESOURCE = "feature-flags.properties";
+    private static final int MAX_INTERNED = 256;
+    private static final List<String> DEPENDENCIES = List.of("controller", "db", "client");
+    private static final Set<String> SETTINGS = settings();
+
+    private static final Path FILE = System.getProperty("feature.flags.file") != null
+            ? Path.of(System.getProperty("feature.flags.file"))
+            : null;
+
+    private static volatile Generation generation = FILE != null ? Generation.load(FILE) : Generation.loadResource();
+
+    private FeatureFlagProfiles() {
+    }
+
+    private static Set<String> settings() {
+        Set<String> settings = new HashSet<>();
+        settings.add("cacheBypass");
+        settings.add("cacheTtlMs");
+        for (String dependency : DEPENDENCIES) {
+            for (String setting : DependencySettings.NAMES) settings.add(dependency + "." + setting);
+        }
+        return Set.copyOf(settings);
+    }
+
+    static FeatureFlag resolve(String header) {
+        return generation.resolve(header);
+    }
+
+    static FeatureFlag baseline() {
+        return generation.baseline;
+    }
+
+    // Starts polling -Dfeature.flags.file for changes, if it is set.
+    public static void watch() {
+        long reloadMs = Long.getLong("feature.flags.reloadMs", 2_000);
+        if (FILE == null || reloadMs <= 0) return;
+
+        Thread.ofPlatform().daemon().name("feature-flags-reload").start(() -> {
+            FileTime loaded = lastModified();
+            while (true) {
+                try {
+                    Thread.sleep(reloadMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                FileTime modified = lastModified();
+                if (modified != null && !modified.equals(loaded)) {
+                    loaded = modified;
+                    reload();
+                }
+            }
+        });
+        logger.atInfo().addKeyValue("feature.flags.file", FILE).addKeyValue("feature.flags.reloadMs", reloadMs)
+                .log("Watching the feature flag profiles for changes");
+    }
+
+    private static void reload() {
+        try {
+            Generation next = Generation.load(FILE);
+            generation = next;
+            logger.atInfo().addKeyValue("feature.flags.file", FILE).addKeyValue("feature.flags.profiles", next.names())
+                    .log("Reloaded the feature flag profiles");
+        } catch (RuntimeException e) {
+            logger.atWarn().addKeyValue("feature.flags.file", FILE).setCause(e)
+                    .log("Couldn't reload the feature flag profiles, keeping the current ones");
+        }
+    }
+
+    private static FileTime lastModified() {
+        try {
+            return Files.getLastModifiedTime(FILE);
+        } catch (IOException e) {
+            // Being replaced (e.g. an editor's rename); the next poll sees the new file.
+            return null;
+        }
+    }
+
+    // One version of the profiles file, with the flags resolved from it so far.
+    private static final class Generation {
+        private final Map<String, Map<String, String>> profiles;
+        // Slow-start ramps run from here.
+        private final long loadedAtNanos = System.nanoTime();
+        private final FeatureFlag baseline;
+        private final Map<String, FeatureFlag> interned = new ConcurrentHashMap<>();
+
+        private Generation(Map<String, Map<String, String>> profiles) {
+            this.profiles = profiles;
+            this.baseline = build(BASELINE, List.of());
+            // Builds every profile on its own, so a bad value fails the load rather than a request.
+            for (String name : profiles.keySet()) {
+                if (!name.equals(BASELINE)) intern(name, build(name, List.of(name)));
+            }
+        }
+
+        static Generation load(Path file) {
+            try (InputStream in = Files.newInputStream(file)) {
+                return parse(in, file.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read the feature flag profiles from " + file, e);
+            }
+        }
+
+        static Generation loadResource() {
+            try (InputStream in = FeatureFlagProfiles.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+                if (in == null) return new Generation(Map.of());
+                return parse(in, RESOURCE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read the feature flag profiles from " + RESOURCE, e);
+            }
+        }
+
+        private static Generation parse(InputStream in, String source) throws IOException {
+            Properties properties = new Properties();
+            properties.load(in);
+
+            Map<String, Map<String, String>> profiles = new HashMap<>();
+            for (String key : properties.stringPropertyNames()) {
+                int dot = key.indexOf('.');
+                String setting = dot > 0 ? key.substring(dot + 1) : "";
+                if (!SETTINGS.contains(setting)) {
+                    throw new IllegalArgumentException(
+                            source + ": expected <profile>." + new TreeSet<>(SETTINGS) + ", got " + key);
+                }
+                String profile = key.substring(0, dot).toLowerCase(Locale.ROOT);
+                profiles.computeIfAbsent(profile, k -> new HashMap<>()).put(setting, properties.getProperty(key).trim());
+            }
+            return new Generation(profiles);
+        }
+
+        FeatureFlag resolve(String header) {
+            if (header == null || header.isEmpty()) return baseline;
+            FeatureFlag flag = interned.get(header);
+            if (flag != null) return flag;
+
+            // Normalizes the header to the known profile names, in order, without repeats.
+            List<String> names = new ArrayList<>(2);
+            for (String token : header.split(",")) {
+                String name = token.trim().toLowerCase(Locale.ROOT);
+                if (profiles.containsKey(name) && !name.equals(BASELINE) && !names.contains(name)) names.add(name);
+            }
+            if (names.isEmpty()) return intern(header, baseline);
+
+            String name = String.join(",", names);
+            flag = interned.get(name);
+            if (flag == null) flag = intern(name, build(name, names));
+            return intern(header, flag);
+        }
+
+        // Returns the interned flag, or the given one if the table is full.
+        private FeatureFlag intern(String key, FeatureFlag flag) {
+            if (interned.size() >= MAX_INTERNED) return flag;
+            FeatureFlag existing = interned.putIfAbsent(key, flag);
+            return existing != null ? existing : flag;
+        }
+
+        private FeatureFlag build(String name, List<String> names) {
+            Settings settings = new Settings();
+            settings.apply(BASELINE, profiles.getOrDefault(BASELINE, Map.of()));
+            for (String profile : names) {
+                settings.apply(profile, profiles.get(profile));
+            }
+            return settings.toFeatureFlag(name, loadedAtNanos);
+        }
+
+        Set<String> names() {
+            return new TreeSet<>(profiles.keySet());
+        }
+    }
+
+    // Starts from the built-in baseline.
+    private static final class Settings {
+        private boolean cacheBypass = false;
+        private Duration cacheTtl = null;
+        private final DependencySettings controller = new DependencySettings(50, 150, 0);
+        private final DependencySettings db = new DependencySettings(200, 800, 0.10);
+        private final DependencySettings client = new DependencySettings(200, 800, 0.10);
+
+        void apply(String profile, Map<String, String> overrides) {
+            overrides.forEach((setting, value) -> {
+                String key = profile + "." + setting;
+                if (setting.equals("cacheBypass")) {
+                    cacheBypass = Boolean.parseBoolean(value);
+                    return;
+                }
+                if (setting.equals("cacheTtlMs")) {
+                    cacheTtl = Duration.ofMillis(DependencySettings.millis(key, value));
+                    return;
+                }
+                int dot = setting.indexOf('.');
+                DependencySettings dependency = switch (setting.substring(0, dot)) {
+                    case "controller" -> controller;
+                    case "db" -> db;
+                    case "client" -> client;
+                    default -> throw new IllegalArgumentException("Unknown feature flag setting " + key);
+                };
+                dependency.apply(key, setting.substring(dot + 1), value);
+            });
+        }
+
+        FeatureFlag toFeatureFlag(String name, long loadedAtNanos) {
+            return new FeatureFlag(name, cacheBypass, cacheTtl,
+                    controller.toFaultProfile(loadedAtNanos),
+                    db.toFaultProfile(loadedAtNanos),
+                    client.toFaultProfile(loadedAtNanos));
+        }
+    }
+
+    private static final class DependencySettings {
+        static final List<String> NAMES = List.of("latencyMs", "latency", "errorRate", "failure", "hangMs",
+                "burst.periodMs", "burst.durationMs", "burst.errorRate", "rampMs", "rampFactor");
+
+        private LatencyDistribution latency;
+        private double errorRate;
+        private FaultProfile.FailureMode failure = FaultProfile.FailureMode.FAST;
+        private long hangMs = 30_000;
+        private long burstPeriodMs;
+        private long burstDurationMs;
+        private double burstErrorRate;
+        private long rampMs;
+        private double rampFactor = 1;
+
+        DependencySettings(long minLatencyMs, long maxLatencyMs, double errorRate) {
+            this.latency = new LatencyDistribution.Uniform(minLatencyMs, maxLatencyMs);
+            this.errorRate = errorRate;
+        }
+
+        void apply(String key, String setting, String value) {
+            switch (setting) {
+                case "latencyMs" -> latency = range(key, value);
+                case "latency" -> latency = LatencyDistribution.parse(key, value);
+                case "errorRate" -> errorRate = rate(key, value);
+                case "failure" -> failure = failureMode(key, value);
+                case "hangMs" -> hangMs = millis(key, value);
+                case "burst.periodMs" -> burstPeriodMs = millis(key, value);
+                case "burst.durationMs" -> burstDurationMs = millis(key, value);
+                case "burst.errorRate" -> burstErrorRate = rate(key, value);
+                case "rampMs" -> rampMs = millis(key, value);
+                case "rampFactor" -> rampFactor = factor(key, value);
+                default -> throw new IllegalArgumentException("Unknown feature flag setting " + key);
+            }
+        }
+
+        FaultProfile toFaultProfile(long loadedAtNanos) {
+            return new FaultProfile(latency, errorRate, failure, Duration.ofMillis(hangMs),
+                    burstPeriodMs > 0 && burstDurationMs > 0
+                            ? new FaultProfile.Burst(burstPeriodMs, burstDurationMs, burstErrorRate)
+                            : FaultProfile.Burst.NONE,
+                    rampMs > 0 && rampFactor != 1
+                            ? new FaultProfile.Ramp(loadedAtNanos, TimeUnit.MILLISECONDS.toNanos(rampMs), rampFactor)
+                            : FaultProfile.Ramp.NONE);
+        }
+
+        // "min-max" in milliseconds, max exclusive.
+        private static LatencyDistribution range(String key, String value) {
+            int dash = value.indexOf('-');
+            try {
+                long min = Long.parseLong(value.substring(0, Math.max(dash, 0)).trim());
+                long max = Long.parseLong(value.substring(dash + 1).trim());
+                if (min >= 0 && min < max) return new LatencyDistribution.Uniform(min, max);
+            } catch (NumberFormatException ignore) {
+            }
+            throw new IllegalArgumentException(key + " must be <min>-<max> milliseconds with 0 <= min < max, got " + value);
+        }
+
+        private static double rate(String key, String value) {
+            try {
+                double rate = Double.parseDouble(value);
+                if (rate >= 0 && rate <= 1) return rate;
+            } catch (NumberFormatException ignore) {
+            }
+            throw new IllegalArgumentException(key + " must be between 0 and 1, got " + value);
+        }
+
+        private static long millis(String key, String value) {
+            try {
+                long millis = Long.parseLong(value);
+                if (millis >= 0) return millis;
+            } catch (NumberFormatException ignore) {
+            }
+            throw new IllegalArgumentException(key + " must be a number of milliseconds, got " + value);
+        }
+
+        private static double factor(String key, String value) {
+            try {
+                double factor = Double.parseDouble(value);
+                if (factor >= 1) return factor;
+            } catch (NumberFormatException ignore) {
+            }
+            throw new IllegalArgumentException(key + " must be at least 1, got " + value);
+        }
+
+        private static FaultProfile.FailureMode failureMode(String key, String value) {
+            try {
+                return FaultProfile.FailureMode.valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(key + " must be fast or timeout, got " + value);
+            }
+        }
+    }
+}
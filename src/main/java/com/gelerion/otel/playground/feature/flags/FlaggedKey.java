@@ -0,0 +1,35 @@
+package com.gelerion.otel.playground.feature.flags;
+
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+import java.util.function.Function;
+
+/*
+A key scoped to a feature flag, for whatever requests share whose result depends on the flag's fault profile:
+coalesced calls (SingleFlight) and cached values (ReadThroughCache). A baseline request and a "high-latency" request
+for the same user never share a call or a value, so neither inherits the other's injected latency or errors.
+
+Keyed by the flag's name, its normalized header value: equal names share, whatever FeatureFlag instance they came from.
+ */
+public record FlaggedKey<K>(String featureFlag, K key) {
+
+    // The key under the current request's flag.
+    public static <K> FlaggedKey<K> current(K key) {
+        return new FlaggedKey<>(FeatureFlag.current().name(), key);
+    }
+
+    // Runs the call with this key's flag current. A cache refresh has no request, and so no flag, of its own: without
+    // this it would reload a "high-latency" entry with the baseline's faults.
+    public <V> V apply(Function<K, V> call) {
+        if (FeatureFlag.current().name().equals(featureFlag)) return call.apply(key);
+        try (Scope __ = Context.current().with(flag()).makeCurrent()) {
+            return call.apply(key);
+        }
+    }
+
+    // The flag this key was made under, resolved against the current profiles.
+    public FeatureFlag flag() {
+        return FeatureFlag.fromHeader(featureFlag);
+    }
+}
@@ -0,0 +1,19 @@
+package com.gelerion.otel.playground.filters.after;
+
+import com.gelerion.otel.playground.filters.before.ConcurrencyLimitBeforeFilter;
+import com.gelerion.otel.playground.limits.RouteLimiter;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+// Returns the request's concurrency permit (afterAfter, so it runs after errors too). How long the permit was held
+// is the latency sample the route's limit adapts to.
+public class ConcurrencyLimitReleaseFilter implements Filter {
+    @Override
+    public void handle(Request request, Response response) {
+        RouteLimiter.Permit permit = request.attribute(ConcurrencyLimitBeforeFilter.PERMIT_ATTR);
+        if (permit != null) {
+            permit.release();
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package com.gelerion.otel.playground.filters.after;
 
+import com.gelerion.otel.playground.filters.before.MetricsRecorderBeforeFilter;
 import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.routing.RouteRegistry;
 import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
-import io.opentelemetry.semconv.HttpAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.ExceptionHandler;
@@ -18,9 +19,11 @@ public class MetricsRecorderAfterFilter implements Filter, ExceptionHandler<Exce
     private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
     private final MetricsProvider metricsProvider;
+    private final RouteRegistry routes;
 
-    public MetricsRecorderAfterFilter(MetricsProvider metricsProvider) {
+    public MetricsRecorderAfterFilter(MetricsProvider metricsProvider, RouteRegistry routes) {
         this.metricsProvider = metricsProvider;
+        this.routes = routes;
     }
 
     // A happy path.
@@ -48,12 +51,14 @@ public class MetricsRecorderAfterFilter implements Filter, ExceptionHandler<Exce
     }
 
     private void recordMetrics(Request request, Response response) {
-        double seconds = durationsSeconds(request.attribute("__startNanos"));
+        double seconds = durationsSeconds(request.attribute(MetricsRecorderBeforeFilter.START_NANOS_ATTR));
         Attributes attributes = attributes(request, response);
 
         metricsProvider.serverRequestDurationHistogram().record(seconds, attributes);
         metricsProvider.totalRequestsCounter().add(1, attributes);
-        metricsProvider.activeRequestsCounter().add(-1, attributes);
+        // Must use the same attributes as the increment (no status code), otherwise the series never returns to zero.
+        metricsProvider.activeRequestsCounter().add(-1, metricsProvider.httpServerAttributes()
+                .get(request.requestMethod(), routes.route(request)));
     }
 
     private double durationsSeconds(Long startNanos) {
@@ -63,10 +68,8 @@ public class MetricsRecorderAfterFilter implements Filter, ExceptionHandler<Exce
     }
 
     private Attributes attributes(Request request, Response response) {
-        return Attributes.builder()
-                .put(HttpAttributes.HTTP_REQUEST_METHOD, request.requestMethod())
-                .put(HttpAttributes.HTTP_ROUTE, request.pathInfo()) // Never label by raw dynamic values.
-                .put(HttpAttributes.HTTP_RESPONSE_STATUS_CODE, response.status())
-                .build();
+        // Never label by raw dynamic values.
+        return metricsProvider.httpServerAttributes()
+                .get(request.requestMethod(), routes.route(request), response.status());
     }
 }
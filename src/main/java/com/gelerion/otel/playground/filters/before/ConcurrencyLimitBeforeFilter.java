@@ -0,0 +1,92 @@
+package com.gelerion.otel.playground.filters.before;
+
+import com.gelerion.otel.playground.limits.ConcurrencyLimits;
+import com.gelerion.otel.playground.limits.RouteLimiter;
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.routing.RouteRegistry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.semconv.HttpAttributes;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+import static spark.Spark.halt;
+
+/*
+Load shedding: admits a request only while its route is under its adaptive concurrency limit (see ConcurrencyLimits),
+otherwise answers 503 with Retry-After right away. A rejected request costs microseconds and no downstream calls, so
+an overloaded server keeps serving what it admitted at normal latency instead of queueing everything.
+
+Runs after the SERVER span is current and before MetricsRecorderBeforeFilter: a rejected request never counts as
+active, and its 503 is recorded here (http.server.request.duration, http.server.requests), since Spark skips the after
+filters on halt. An admitted request's duration starts here too, before its wait in the queue (START_NANOS_ATTR). The permit is returned by ConcurrencyLimitReleaseFilter (afterAfter), whatever the outcome.
+ */
+public class ConcurrencyLimitBeforeFilter implements Filter {
+    public static final String PERMIT_ATTR = "concurrency.permit";
+
+    private static final AttributeKey<Long> LIMIT = AttributeKey.longKey("http.server.concurrency.limit");
+    private static final AttributeKey<Double> QUEUE_WAIT = AttributeKey.doubleKey("http.server.concurrency.queue_wait");
+    private static final AttributeKey<Boolean> REJECTED = AttributeKey.booleanKey("http.server.concurrency.rejected");
+    private static final String REJECTED_BODY =
+            "{\"error\":\"Service Unavailable\",\"message\":\"Too many concurrent requests, retry later\"}";
+
+    private final ConcurrencyLimits limits;
+    private final MetricsProvider metricsProvider;
+    private final RouteRegistry routes;
+    private final String retryAfter;
+
+    public ConcurrencyLimitBeforeFilter(ConcurrencyLimits limits, MetricsProvider metricsProvider, RouteRegistry routes) {
+        this.limits = limits;
+        this.metricsProvider = metricsProvider;
+        this.routes = routes;
+        this.retryAfter = String.valueOf(limits.config().retryAfterSeconds());
+    }
+
+    @Override
+    public void handle(Request request, Response response) {
+        String route = routes.route(request);
+        if (route == null) return;
+
+        long start = System.nanoTime();
+        request.attribute(MetricsRecorderBeforeFilter.START_NANOS_ATTR, start);
+        RouteLimiter limiter = limits.forRoute(route);
+        long waitedNanos;
+        try {
+            waitedNanos = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            waitedNanos = -1;
+        }
+
+        Span span = Span.current();
+        span.setAttribute(LIMIT, limiter.limit());
+        if (waitedNanos < 0) {
+            reject(request, response, route, span, start);
+            return;
+        }
+
+        double waitedSeconds = waitedNanos / 1_000_000_000.0;
+        metricsProvider.concurrencyQueueWaitHistogram()
+                .record(waitedSeconds, metricsProvider.httpServerAttributes().get(request.requestMethod(), route));
+        if (waitedNanos > 0) span.setAttribute(QUEUE_WAIT, waitedSeconds);
+
+        request.attribute(PERMIT_ATTR, new RouteLimiter.Permit(limiter, System.nanoTime()));
+    }
+
+    private void reject(Request request, Response response, String route, Span span, long start) {
+        span.setAttribute(REJECTED, true);
+        span.setAttribute(HttpAttributes.HTTP_RESPONSE_STATUS_CODE, 503);
+        span.setStatus(StatusCode.ERROR, "Concurrency limit reached");
+
+        Attributes attributes = metricsProvider.httpServerAttributes().get(request.requestMethod(), route, 503);
+        metricsProvider.serverRequestDurationHistogram().record((System.nanoTime() - start) / 1_000_000_000.0, attributes);
+        metricsProvider.totalRequestsCounter().add(1, attributes);
+
+        response.header("Retry-After", retryAfter);
+        response.type("application/json");
+        halt(503, REJECTED_BODY);
+    }
+}
@@ -1,14 +1,54 @@
 package com.gelerion.otel.playground.filters.before;
 
 import com.gelerion.otel.playground.feature.flags.FeatureFlag;
+import io.opentelemetry.api.baggage.Baggage;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
 import spark.Filter;
 import spark.Request;
 import spark.Response;
 
+/*
+Makes the request's FeatureFlag current, in the OTel Context. Runs after OtelContextPropagationBeforeFilter, so the
+upstream baggage is already current: without an X-Feature-Flag header, a "feature.flag" baggage entry selects the
+profile instead.
+
+With -Dfeature.flags.baggage=true the flag is also put into the baggage, so the W3C baggage propagator forwards it
+to downstream calls along with the trace headers (RemoteClient sends X-Feature-Flag either way).
+ */
 public class FeatureFlagBeforeFilter implements Filter {
+    public static final String FEATURE_FLAG_SCOPE_ATTR = "feature.flag.scope";
+
+    private final boolean propagateInBaggage;
+
+    public FeatureFlagBeforeFilter() {
+        this(Boolean.getBoolean("feature.flags.baggage"));
+    }
+
+    public FeatureFlagBeforeFilter(boolean propagateInBaggage) {
+        this.propagateInBaggage = propagateInBaggage;
+    }
+
     @Override
     public void handle(Request request, Response response) {
-        FeatureFlag.initializeFromRequest(request);
+        Context context = Context.current();
+        String header = request.headers(FeatureFlag.HEADER);
+        if (header == null) {
+            header = Baggage.fromContext(context).getEntryValue(FeatureFlag.BAGGAGE_KEY);
+        }
+        FeatureFlag flag = FeatureFlag.fromHeader(header);
+        if (flag.isBaseline()) {
+            // Nothing to make current: FeatureFlag.current() falls back to the baseline.
+            return;
+        }
+
+        context = context.with(flag);
+        if (propagateInBaggage) {
+            context = context.with(Baggage.fromContext(context).toBuilder()
+                    .put(FeatureFlag.BAGGAGE_KEY, flag.toHeader())
+                    .build());
+        }
+        // Closed by the afterAfter cleanup, before the SERVER span's scope.
+        request.attribute(FEATURE_FLAG_SCOPE_ATTR, context.makeCurrent());
     }
 }
-
@@ -1,27 +1,33 @@
 package com.gelerion.otel.playground.filters.before;
 
 import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.routing.RouteRegistry;
 import io.opentelemetry.api.common.Attributes;
-import io.opentelemetry.semconv.HttpAttributes;
 import spark.Filter;
 import spark.Request;
 import spark.Response;
 
 public class MetricsRecorderBeforeFilter implements Filter {
+    // When the request started, for http.server.request.duration. Set here unless ConcurrencyLimitBeforeFilter already
+    // did, before the request waited in its route's queue: that wait is part of what the client sees.
+    public static final String START_NANOS_ATTR = "__startNanos";
+
     private final MetricsProvider metricsProvider;
+    private final RouteRegistry routes;
 
-    public MetricsRecorderBeforeFilter(MetricsProvider metricsProvider) {
+    public MetricsRecorderBeforeFilter(MetricsProvider metricsProvider, RouteRegistry routes) {
         this.metricsProvider = metricsProvider;
+        this.routes = routes;
     }
 
     @Override
     public void handle(Request request, Response response) {
-        request.attribute("__startNanos", System.nanoTime()); //to measure elapsed time
+        if (request.attribute(START_NANOS_ATTR) == null) {
+            request.attribute(START_NANOS_ATTR, System.nanoTime()); //to measure elapsed time
+        }
 
-        Attributes attributes = Attributes.builder()
-                .put(HttpAttributes.HTTP_REQUEST_METHOD, request.requestMethod())
-                .put(HttpAttributes.HTTP_ROUTE, request.pathInfo()) //never label by raw dynamic values
-                .build();
+        Attributes attributes = metricsProvider.httpServerAttributes()
+                .get(request.requestMethod(), routes.route(request)); //never label by raw dynamic values
 
         metricsProvider.activeRequestsCounter().add(1, attributes);
     }
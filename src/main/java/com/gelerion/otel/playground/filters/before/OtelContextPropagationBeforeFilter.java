@@ -1,15 +1,14 @@
 package com.gelerion.otel.playground.filters.before;
 
+import com.gelerion.otel.playground.config.otel.TelemetryHandles;
+import com.gelerion.otel.playground.routing.RouteRegistry;
 import com.gelerion.otel.playground.utils.RequestCtxParams;
-import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.baggage.Baggage;
 import io.opentelemetry.api.trace.SpanKind;
-import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
 import io.opentelemetry.context.propagation.TextMapGetter;
 import io.opentelemetry.semconv.HttpAttributes;
-import io.opentelemetry.semconv.SchemaUrls;
 import spark.Filter;
 import spark.Request;
 import spark.Response;
@@ -33,6 +32,12 @@ public class OtelContextPropagationBeforeFilter implements Filter {
         }
     };
 
+    private final RouteRegistry routes;
+
+    public OtelContextPropagationBeforeFilter(RouteRegistry routes) {
+        this.routes = routes;
+    }
+
     @Override
     public void handle(Request request, Response response) {
         /*
@@ -42,7 +47,7 @@ public class OtelContextPropagationBeforeFilter implements Filter {
             var updated = Baggage.fromContext(base).toBuilder().put("tenant.id", tenantId).build();
             var ctx = updated.storeInContext(base);
          */
-        var propagator = GlobalOpenTelemetry.getPropagators().getTextMapPropagator();
+        var propagator = TelemetryHandles.propagators().getTextMapPropagator();
 
         // 1) Extracts the upstream trace context and baggage from the HTTP headers.
         Context extracted = propagator.extract(Context.current(), request, REQUEST_HEADERS_GETTER);
@@ -52,14 +57,21 @@ public class OtelContextPropagationBeforeFilter implements Filter {
                 .put(RequestCtxParams.REQUEST_ID, UUID.randomUUID().toString())
                 .build();
 
+        // Names the span after the route template ({method} {http.route}), never the raw path: /v1/hello/john and
+        // /v1/hello/jane are the same operation. If no route matches, semconv says to use just the method.
+        String method = request.requestMethod();
+        String route = routes.route(request);
+
         // Continues the upstream trace if it is present; otherwise, it starts a new root.
-        var serverSpan = tracer().spanBuilder(request.requestMethod() + " " + request.pathInfo())
+        var spanBuilder = TelemetryHandles.tracer().spanBuilder(route != null ? method + " " + route : method)
                 .setSpanKind(SpanKind.SERVER)
                 .setParent(extracted)
                 // Semantic conventions
-                .setAttribute(HttpAttributes.HTTP_REQUEST_METHOD, request.requestMethod())
-                .setAttribute(HttpAttributes.HTTP_ROUTE, request.pathInfo())
-                .startSpan();
+                .setAttribute(HttpAttributes.HTTP_REQUEST_METHOD, method);
+        if (route != null) {
+            spanBuilder.setAttribute(HttpAttributes.HTTP_ROUTE, route);
+        }
+        var serverSpan = spanBuilder.startSpan();
 
         // Activates the context on the current thread, making the context (with its current span and baggage) visible to downstream code.
         Scope scope = Context.current()
@@ -71,12 +83,4 @@ public class OtelContextPropagationBeforeFilter implements Filter {
         request.attribute(OTEL_SCOPE_ATTR, scope);
         request.attribute(OTEL_SERVER_SPAN_ATTR, serverSpan);
     }
-
-    public static Tracer tracer() {
-        return GlobalOpenTelemetry
-                .tracerBuilder("com.gelerion.otel.playground.http")
-                .setInstrumentationVersion("1.0.0")
-                .setSchemaUrl(SchemaUrls.V1_37_0)
-                .build();
-    }
 }
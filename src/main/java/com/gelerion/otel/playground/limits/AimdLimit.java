@@ -0,0 +1,59 @@
+package com.gelerion.otel.playground.limits;
+
+/*
+Additive increase, multiplicative decrease, as in TCP congestion control: a request that held its permit longer than
+the latency threshold multiplies the limit by BACKOFF; otherwise, while at least half of the limit is in use, each
+request adds 1/limit (so about +1 per limit's worth of requests). Simple and predictable, but it only reacts once
+latency crosses a fixed threshold, where the gradient limit reacts to any queueing.
+
+Backs off at most once per window: the requests that were slow together report together, and should count as one
+congestion signal rather than collapse the limit to its minimum.
+ */
+final class AimdLimit implements LimitAlgorithm {
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private final long latencyThresholdNanos;
+
+    private volatile int limit;
+
+    // Guarded by this.
+    private double estimatedLimit;
+    private long lastBackoff = System.nanoTime();
+
+    AimdLimit(ConcurrencyLimitConfig config) {
+        this.minLimit = config.minLimit();
+        this.maxLimit = config.maxLimit();
+        this.windowNanos = config.window().toNanos();
+        this.latencyThresholdNanos = config.latencyThreshold().toNanos();
+        this.limit = config.initialLimit();
+        this.estimatedLimit = config.initialLimit();
+    }
+
+    @Override
+    public int limit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight) {
+        if (rttNanos > latencyThresholdNanos) {
+            long now = System.nanoTime();
+            if (now - lastBackoff < windowNanos) return;
+            lastBackoff = now;
+            estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF);
+        } else if (inFlight * 2 >= estimatedLimit) {
+            estimatedLimit = Math.min(maxLimit, estimatedLimit + 1 / estimatedLimit);
+        } else {
+            return;
+        }
+        limit = (int) estimatedLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "AimdLimit{limit=" + limit + "}";
+    }
+}
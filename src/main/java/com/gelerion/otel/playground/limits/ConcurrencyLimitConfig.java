@@ -0,0 +1,54 @@
+package com.gelerion.otel.playground.limits;
+
+import java.time.Duration;
+
+/*
+Adaptive concurrency limiting settings (system properties), used with -Dserver.limiter=gradient|aimd.
+Each route gets its own limit, between min and max:
+  -Dserver.limiter.initial            limit before the first adjustment (default: 50)
+  -Dserver.limiter.min / .max         bounds of the limit (default: 5 / 1000)
+  -Dserver.limiter.queue              requests per route that may wait for a permit once the limit is reached (default: 20)
+  -Dserver.limiter.maxWaitMs          how long one of them waits before it is rejected (default: 50)
+  -Dserver.limiter.windowMs           gradient: how often the limit is recomputed; aimd: at most one backoff per window
+                                      (default: 250)
+  -Dserver.limiter.latencyMs          aimd: a request that held its permit longer than this backs the limit off
+                                      (default: 2500)
+  -Dserver.limiter.retryAfterSeconds  Retry-After of a rejected request (default: 1)
+ */
+public record ConcurrencyLimitConfig(LimitAlgorithm.Type type,
+                                     int initialLimit,
+                                     int minLimit,
+                                     int maxLimit,
+                                     int maxQueue,
+                                     Duration maxWait,
+                                     Duration window,
+                                     Duration latencyThreshold,
+                                     int retryAfterSeconds) {
+
+    public ConcurrencyLimitConfig {
+        if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("server.limiter.* must satisfy 1 <= min <= initial <= max");
+        }
+        if (maxQueue < 0 || maxWait.isNegative() || window.isNegative() || window.isZero() || retryAfterSeconds < 0) {
+            throw new IllegalArgumentException(
+                    "server.limiter.queue, .maxWaitMs and .retryAfterSeconds must not be negative, .windowMs must be positive");
+        }
+    }
+
+    public static ConcurrencyLimitConfig fromSystemProperties() {
+        return new ConcurrencyLimitConfig(
+                LimitAlgorithm.Type.fromEnvironment(),
+                Integer.getInteger("server.limiter.initial", 50),
+                Integer.getInteger("server.limiter.min", 5),
+                Integer.getInteger("server.limiter.max", 1_000),
+                Integer.getInteger("server.limiter.queue", 20),
+                Duration.ofMillis(Long.getLong("server.limiter.maxWaitMs", 50)),
+                Duration.ofMillis(Long.getLong("server.limiter.windowMs", 250)),
+                Duration.ofMillis(Long.getLong("server.limiter.latencyMs", 2_500)),
+                Integer.getInteger("server.limiter.retryAfterSeconds", 1));
+    }
+
+    public boolean enabled() {
+        return type != LimitAlgorithm.Type.OFF;
+    }
+}
@@ -0,0 +1,33 @@
+package com.gelerion.otel.playground.limits;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/*
+One RouteLimiter per route template, created on the route's first request. Keyed by template, never by raw path, so
+there are as many limiters as declared routes (requests that match no route aren't limited).
+ */
+public class ConcurrencyLimits {
+    private final ConcurrencyLimitConfig config;
+    private final Map<String, RouteLimiter> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimits(ConcurrencyLimitConfig config) {
+        this.config = config;
+    }
+
+    public RouteLimiter forRoute(String route) {
+        RouteLimiter limiter = limiters.get(route);
+        return limiter != null
+                ? limiter
+                : limiters.computeIfAbsent(route, r -> new RouteLimiter(r, LimitAlgorithm.create(config), config));
+    }
+
+    public void forEach(Consumer<RouteLimiter> action) {
+        limiters.values().forEach(action);
+    }
+
+    public ConcurrencyLimitConfig config() {
+        return config;
+    }
+}
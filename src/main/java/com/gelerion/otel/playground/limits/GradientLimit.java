@@ -0,0 +1,80 @@
+package com.gelerion.otel.playground.limits;
+
+/*
+A gradient limit, after Netflix's concurrency-limits: every window, the average latency of the window (short-term) is
+compared with the latency the route has without load (the best window average seen, drifting up slowly).
+  gradient = clamp(TOLERANCE * noLoad / short, 0.5, 1)
+  limit    = limit * gradient + sqrt(limit)          (sqrt(limit): room for some queueing, so the limit can grow)
+smoothed, and bounded by min/max. While requests don't queue the gradient is 1 and the limit creeps up; as soon as they
+do (short > TOLERANCE * noLoad) it shrinks, by half at most per window.
+
+The no-load latency drifts up by DRIFT per window, so a lasting change of latency (e.g. a slower feature flag profile)
+becomes the new normal: 5x slower takes ~160 windows (40s with the default window), during which the limit is low.
+With TOLERANCE 1.5, a saturated route settles where requests take about 1.5-2x their no-load latency.
+
+The limit only grows while at least half of it is in use: an idle route shouldn't earn a limit it never tested.
+ */
+final class GradientLimit implements LimitAlgorithm {
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double DRIFT = 0.01;
+    private static final int MIN_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+
+    private volatile int limit;
+
+    // Guarded by this.
+    private double estimatedLimit;
+    private double noLoadRttNanos;
+    private long windowStart = System.nanoTime();
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+
+    GradientLimit(ConcurrencyLimitConfig config) {
+        this.minLimit = config.minLimit();
+        this.maxLimit = config.maxLimit();
+        this.windowNanos = config.window().toNanos();
+        this.limit = config.initialLimit();
+        this.estimatedLimit = config.initialLimit();
+    }
+
+    @Override
+    public int limit() {
+        return limit;
+    }
+
+    @Override
+    public synchronized void onSample(long rttNanos, int inFlight) {
+        windowRttSum += rttNanos;
+        windowSamples++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+
+        long now = System.nanoTime();
+        if (now - windowStart < windowNanos || windowSamples < MIN_SAMPLES) return;
+
+        double shortRtt = (double) windowRttSum / windowSamples;
+        noLoadRttNanos = noLoadRttNanos == 0 ? shortRtt : Math.min(shortRtt, noLoadRttNanos * (1 + DRIFT));
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * noLoadRttNanos / shortRtt));
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        if (target > estimatedLimit && windowMaxInFlight < estimatedLimit / 2) {
+            target = estimatedLimit;
+        }
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING));
+        limit = (int) estimatedLimit;
+
+        windowStart = now;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GradientLimit{limit=" + limit + "}";
+    }
+}
@@ -0,0 +1,42 @@
+package com.gelerion.otel.playground.limits;
+
+import java.util.Locale;
+
+/*
+How a route's concurrency limit follows the observed latency. Select with -Dserver.limiter=gradient|aimd, e.g.
+`make up limiter=gradient`; off (the default) admits every request, as before.
+
+Implementations see every completed request (onSample) and publish the limit through a volatile read, so checking
+it on the request path takes no lock.
+ */
+public interface LimitAlgorithm {
+
+    enum Type {
+        OFF,
+        // Compares the short-term latency with the long-term one: the limit shrinks as soon as requests queue up.
+        GRADIENT,
+        // +1 while requests are fast, x backoff when one exceeds the latency threshold.
+        AIMD;
+
+        public static Type fromEnvironment() {
+            String value = System.getProperty("server.limiter");
+            if (value == null || value.isBlank()) {
+                return OFF;
+            }
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    int limit();
+
+    // A request held a permit for rttNanos; inFlight requests (this one included) held one when it finished.
+    void onSample(long rttNanos, int inFlight);
+
+    static LimitAlgorithm create(ConcurrencyLimitConfig config) {
+        return switch (config.type()) {
+            case GRADIENT -> new GradientLimit(config);
+            case AIMD -> new AimdLimit(config);
+            case OFF -> throw new IllegalArgumentException("The concurrency limiter is off");
+        };
+    }
+}
@@ -0,0 +1,117 @@
+package com.gelerion.otel.playground.limits;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+The permits of one route: at most limit() requests in flight. Below the limit, acquiring is one CAS. At the limit, up
+to maxQueue requests wait (at most maxWait) for a permit to be released; the others are rejected at once, so an
+overloaded route answers 503 in microseconds instead of piling up threads.
+
+The lock is only taken by waiting requests, and by releases while someone is waiting. ReentrantLock, not synchronized:
+a waiting virtual thread unmounts.
+ */
+public final class RouteLimiter {
+    private final String route;
+    private final LimitAlgorithm algorithm;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final LongAdder rejected = new LongAdder();
+
+    RouteLimiter(String route, LimitAlgorithm algorithm, ConcurrencyLimitConfig config) {
+        this.route = route;
+        this.algorithm = algorithm;
+        this.maxQueue = config.maxQueue();
+        this.maxWaitNanos = config.maxWait().toNanos();
+    }
+
+    // Nanoseconds waited for the permit (0 if there was one right away), or -1 if the request is rejected.
+    public long acquire() throws InterruptedException {
+        if (tryAcquire()) return 0;
+        if (maxWaitNanos == 0 || waiting.get() >= maxQueue) {
+            rejected.increment();
+            return -1;
+        }
+
+        long start = System.nanoTime();
+        long remaining = maxWaitNanos;
+        lock.lock();
+        waiting.incrementAndGet();
+        try {
+            // Counted as waiting before checking again, so a release in between signals (under the lock) rather than
+            // slipping by: the signal can't be sent before this thread is in await.
+            while (!tryAcquire()) {
+                if (remaining <= 0) {
+                    rejected.increment();
+                    return -1;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            return Math.max(1, System.nanoTime() - start);
+        } finally {
+            waiting.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    // A granted permit, held for the rest of the request (see ConcurrencyLimitReleaseFilter).
+    public record Permit(RouteLimiter limiter, long acquiredAtNanos) {
+        public void release() {
+            limiter.release(System.nanoTime() - acquiredAtNanos);
+        }
+    }
+
+    // Returns the permit, and feeds how long it was held to the limit algorithm.
+    void release(long heldNanos) {
+        algorithm.onSample(heldNanos, inFlight.getAndDecrement());
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                released.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean tryAcquire() {
+        int limit = algorithm.limit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    public String route() {
+        return route;
+    }
+
+    public int limit() {
+        return algorithm.limit();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int waiting() {
+        return waiting.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RouteLimiter{" + route + ", " + algorithm + ", inFlight=" + inFlight + ", waiting=" + waiting + "}";
+    }
+}
@@ -0,0 +1,107 @@
+package com.gelerion.otel.playground.metrics;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.semconv.HttpAttributes;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+Interned attribute sets for the HTTP server instruments.
+Building Attributes on every request allocates a builder, its backing list, a sorted array, and the final
+Attributes instance. The (method, route, status) combinations are few, so we build each one once and hand out
+the same immutable instance afterward: a steady-state lookup is two map reads and an array read, without allocation.
+
+The route is the template resolved by RouteRegistry (or null for requests that didn't match any route),
+so the number of combinations is bounded by the declared routes. The method comes from the client, so anything but
+the nine methods semconv knows is labeled _OTHER, as semconv says: otherwise any client could add map entries (and
+metric series) with made-up methods, matched route or not.
+Nested maps are used instead of a composite key on purpose, so that the lookup doesn't allocate a key object.
+The cache is bounded by the number of routes: once full, attributes are built per call (and are not cached),
+which keeps memory flat even if someone feeds us unbounded route values.
+ */
+public class HttpServerAttributesCache {
+    private static final int MAX_ROUTES = 512;
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+    private static final Set<String> KNOWN_METHODS =
+            Set.of("GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH");
+    private static final String OTHER_METHOD = "_OTHER";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, RouteAttributes>> byMethod = new ConcurrentHashMap<>();
+    private final AtomicInteger routes = new AtomicInteger();
+
+    // Attributes for metrics recorded before the response status is known (e.g., http.server.active_requests).
+    public Attributes get(String method, String route) {
+        RouteAttributes entry = entry(method, route);
+        return entry != null ? entry.base : build(method, route);
+    }
+
+    public Attributes get(String method, String route, int statusCode) {
+        RouteAttributes entry = entry(method, route);
+        if (entry == null || statusCode < MIN_STATUS || statusCode > MAX_STATUS) {
+            return build(method, route).toBuilder()
+                    .put(HttpAttributes.HTTP_RESPONSE_STATUS_CODE, statusCode)
+                    .build();
+        }
+        return entry.withStatus(statusCode);
+    }
+
+    private RouteAttributes entry(String rawMethod, String route) {
+        String method = normalize(rawMethod);
+        String key = route != null ? route : "";
+        ConcurrentMap<String, RouteAttributes> byRoute = byMethod.get(method);
+        if (byRoute == null) {
+            byRoute = byMethod.computeIfAbsent(method, __ -> new ConcurrentHashMap<>());
+        }
+
+        RouteAttributes entry = byRoute.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        if (routes.get() >= MAX_ROUTES) {
+            return null;
+        }
+        return byRoute.computeIfAbsent(key, __ -> {
+            routes.incrementAndGet();
+            return new RouteAttributes(build(method, route));
+        });
+    }
+
+    // Case-sensitive, like semconv's list: "get" is not GET.
+    private static String normalize(String method) {
+        return method != null && KNOWN_METHODS.contains(method) ? method : OTHER_METHOD;
+    }
+
+    private static Attributes build(String method, String route) {
+        AttributesBuilder builder = Attributes.builder().put(HttpAttributes.HTTP_REQUEST_METHOD, normalize(method));
+        if (route != null) {
+            builder.put(HttpAttributes.HTTP_ROUTE, route); // Never label by raw dynamic values.
+        }
+        return builder.build();
+    }
+
+    private static final class RouteAttributes {
+        private final Attributes base;
+        private final AtomicReferenceArray<Attributes> byStatus = new AtomicReferenceArray<>(MAX_STATUS - MIN_STATUS + 1);
+
+        private RouteAttributes(Attributes base) {
+            this.base = base;
+        }
+
+        private Attributes withStatus(int statusCode) {
+            int index = statusCode - MIN_STATUS;
+            Attributes attributes = byStatus.get(index);
+            if (attributes == null) {
+                // A benign race: two threads may build the same set, and one of them wins.
+                attributes = base.toBuilder().put(HttpAttributes.HTTP_RESPONSE_STATUS_CODE, statusCode).build();
+                byStatus.compareAndSet(index, null, attributes);
+            }
+            return attributes;
+        }
+    }
+}
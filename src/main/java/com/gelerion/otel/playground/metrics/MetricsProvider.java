@@ -1,8 +1,25 @@
 package com.gelerion.otel.playground.metrics;
 
-import io.opentelemetry.api.GlobalOpenTelemetry;
+import com.gelerion.otel.playground.config.otel.OverflowDetectingMetricExporter;
+import com.gelerion.otel.playground.config.otel.TelemetryHandles;
+import com.gelerion.otel.playground.config.server.ThreadingMode;
+import com.gelerion.otel.playground.config.server.VirtualThreadPool;
+import com.gelerion.otel.playground.limits.ConcurrencyLimits;
+import com.gelerion.otel.playground.repository.ConnectionPool;
+import com.gelerion.otel.playground.resilience.CircuitBreaker;
+import com.gelerion.otel.playground.resilience.DependencyGuard;
+import com.gelerion.otel.playground.sampling.LogSamplingFilter;
+import com.gelerion.otel.playground.sampling.RateLimitingSampler;
+import com.gelerion.otel.playground.sampling.TailSamplingSpanProcessor;
+import com.gelerion.otel.playground.spool.Spool;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
 import io.opentelemetry.api.metrics.*;
-import io.opentelemetry.semconv.SchemaUrls;
+import io.opentelemetry.semconv.HttpAttributes;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.List;
 
 public class MetricsProvider {
 
@@ -29,6 +46,34 @@ public class MetricsProvider {
             .setUnit("s")
             .build();
 
+    // Time spent waiting for a pooled connection (semconv db.client.connection.wait_time); ~0 while the pool has spares.
+    private final DoubleHistogram dbConnectionWaitSec = meter()
+            .histogramBuilder("db.client.connection.wait_time")
+            .setDescription("Time it took to obtain an open connection from the pool")
+            .setUnit("s")
+            .build();
+
+    // Tasks of a ContextPropagatingExecutorService, by executor.name: how long a task waited for a thread, and how long
+    // it ran. A growing wait with a flat run time means the executor is saturated, not that the tasks got slower.
+    private final DoubleHistogram executorQueueWaitSec = meter()
+            .histogramBuilder("executor.task.queue_wait")
+            .setDescription("Time from submitting a task until it started running")
+            .setUnit("s")
+            .build();
+
+    private final DoubleHistogram executorTaskDurationSec = meter()
+            .histogramBuilder("executor.task.duration")
+            .setDescription("Time a task ran")
+            .setUnit("s")
+            .build();
+
+    // Time an admitted request waited for a concurrency permit of its route (0 while under the limit), see
+    // ConcurrencyLimitBeforeFilter. Rejected requests are in http.server.request.duration with status 503.
+    private final DoubleHistogram concurrencyQueueWaitSec = meter()
+            .histogramBuilder("http.server.concurrency.queue_wait")
+            .setDescription("Time a request waited for a concurrency permit")
+            .setUnit("s")
+            .build();
 
     private final LongCounter reqTotal = meter()
             .counterBuilder("http.server.requests")
@@ -36,6 +81,42 @@ public class MetricsProvider {
             .setUnit("1")
             .build();
 
+    // Backend calls through SingleFlight, by role: a leader issued the call, a follower shared a leader's result.
+    // follower / (leader + follower) is the share of backend calls saved by coalescing.
+    private final LongCounter singleFlightCalls = meter()
+            .counterBuilder("singleflight.calls")
+            .setDescription("Calls through the request coalescing layer")
+            .setUnit("{call}")
+            .build();
+
+    // Read-through cache lookups by cache.name and cache.result (hit/miss/bypass), and entries evicted by cause
+    // (size, expired). The hit ratio is hit / (hit + miss).
+    private final LongCounter cacheRequests = meter()
+            .counterBuilder("cache.requests")
+            .setDescription("Cache lookups by result")
+            .setUnit("{request}")
+            .build();
+
+    private final LongCounter cacheEvictions = meter()
+            .counterBuilder("cache.evictions")
+            .setDescription("Cache entries evicted, by cause")
+            .setUnit("{entry}")
+            .build();
+
+    // Circuit breaker transitions by dependency and circuit_breaker.state.from/.to, and calls to a dependency that
+    // were never made (reason=circuit_open|bulkhead_full), see DependencyGuard.
+    private final LongCounter circuitBreakerTransitions = meter()
+            .counterBuilder("resilience.circuit_breaker.transitions")
+            .setDescription("Circuit breaker state changes")
+            .setUnit("{transition}")
+            .build();
+
+    private final LongCounter resilienceRejections = meter()
+            .counterBuilder("resilience.rejections")
+            .setDescription("Calls to a dependency rejected by its circuit breaker or bulkhead")
+            .setUnit("{call}")
+            .build();
+
     // Tracks in-flight requests.
     private final LongUpDownCounter reqActive = meter()
             .upDownCounterBuilder("http.server.active_requests")
@@ -43,6 +124,9 @@ public class MetricsProvider {
             .setUnit("1")
             .build();
 
+    // Interned attribute sets for the instruments above, so recording doesn't allocate on the hot path.
+    private final HttpServerAttributesCache httpServerAttributes = new HttpServerAttributesCache();
+
     public DoubleHistogram serverRequestDurationHistogram() {
         return reqDurationSec;
     }
@@ -55,19 +139,334 @@ public class MetricsProvider {
         return dbReqDurationSec;
     }
 
+    public DoubleHistogram dbConnectionWaitTimeHistogram() {
+        return dbConnectionWaitSec;
+    }
+
+    public DoubleHistogram executorQueueWaitHistogram() {
+        return executorQueueWaitSec;
+    }
+
+    public DoubleHistogram executorTaskDurationHistogram() {
+        return executorTaskDurationSec;
+    }
+
+    public DoubleHistogram concurrencyQueueWaitHistogram() {
+        return concurrencyQueueWaitSec;
+    }
+
     public LongCounter totalRequestsCounter() {
         return reqTotal;
     }
 
+    public LongCounter singleFlightCallsCounter() {
+        return singleFlightCalls;
+    }
+
+    public LongCounter cacheRequestsCounter() {
+        return cacheRequests;
+    }
+
+    public LongCounter cacheEvictionsCounter() {
+        return cacheEvictions;
+    }
+
+    public LongCounter circuitBreakerTransitionsCounter() {
+        return circuitBreakerTransitions;
+    }
+
+    public LongCounter resilienceRejectionsCounter() {
+        return resilienceRejections;
+    }
+
     public LongUpDownCounter activeRequestsCounter() {
         return reqActive;
     }
 
+    public HttpServerAttributesCache httpServerAttributes() {
+        return httpServerAttributes;
+    }
+
+    // Saturation of the Jetty pool that executes requests, so both threading modes can be compared under the same load.
+    // Asynchronous instruments: the SDK invokes the callbacks once per collection cycle, not per request.
+    public void observeThreadPool(ThreadPool pool, ThreadingMode mode) {
+        AttributeKey<String> modeKey = AttributeKey.stringKey("thread.pool.mode");
+        AttributeKey<String> stateKey = AttributeKey.stringKey("thread.state");
+        Attributes busy = Attributes.of(modeKey, mode.attributeValue(), stateKey, "busy");
+        Attributes idle = Attributes.of(modeKey, mode.attributeValue(), stateKey, "idle");
+        Attributes common = Attributes.of(modeKey, mode.attributeValue());
+
+        meter().upDownCounterBuilder("jetty.thread_pool.threads")
+                .setDescription("Threads of the request thread pool by state")
+                .setUnit("{thread}")
+                .buildWithCallback(measurement -> {
+                    int idleThreads = pool.getIdleThreads();
+                    measurement.record(pool.getThreads() - idleThreads, busy);
+                    measurement.record(idleThreads, idle);
+                });
+
+        meter().upDownCounterBuilder("jetty.thread_pool.queue.size")
+                .setDescription("Jobs waiting for a free thread")
+                .setUnit("{job}")
+                .buildWithCallback(measurement -> measurement.record(
+                        pool instanceof QueuedThreadPool qtp ? qtp.getQueueSize() : 0, common));
+
+        meter().gaugeBuilder("jetty.thread_pool.low_on_threads")
+                .setDescription("1 when the pool has no spare threads left and requests start to queue")
+                .setUnit("1")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(pool.isLowOnThreads() ? 1 : 0, common));
+
+        if (pool instanceof QueuedThreadPool qtp) {
+            meter().upDownCounterBuilder("jetty.thread_pool.limit")
+                    .setDescription("Maximum number of threads in the request thread pool")
+                    .setUnit("{thread}")
+                    .buildWithCallback(measurement -> measurement.record(qtp.getMaxThreads(), common));
+        }
+
+        if (pool instanceof VirtualThreadPool vtp) {
+            meter().counterBuilder("jetty.thread_pool.tasks")
+                    .setDescription("Tasks started, each on its own virtual thread")
+                    .setUnit("{task}")
+                    .buildWithCallback(measurement -> measurement.record(vtp.getStartedTasks(), common));
+        }
+    }
+
+    // Database connection pool usage (semconv db.client.connection.*), read from the pool at collection time.
+    public void observeConnectionPool(ConnectionPool pool) {
+        AttributeKey<String> poolKey = ConnectionPool.POOL_NAME_KEY;
+        AttributeKey<String> stateKey = AttributeKey.stringKey("db.client.connection.state");
+        Attributes used = Attributes.of(poolKey, ConnectionPool.POOL_NAME, stateKey, "used");
+        Attributes idle = Attributes.of(poolKey, ConnectionPool.POOL_NAME, stateKey, "idle");
+        Attributes common = Attributes.of(poolKey, ConnectionPool.POOL_NAME);
+
+        meter().upDownCounterBuilder("db.client.connection.count")
+                .setDescription("Open connections by state")
+                .setUnit("{connection}")
+                .buildWithCallback(measurement -> {
+                    measurement.record(pool.inUseConnections(), used);
+                    measurement.record(pool.idleConnections(), idle);
+                });
+
+        meter().upDownCounterBuilder("db.client.connection.max")
+                .setDescription("Maximum number of open connections allowed")
+                .setUnit("{connection}")
+                .buildWithCallback(measurement -> measurement.record(pool.maxSize(), common));
+
+        meter().upDownCounterBuilder("db.client.connection.pending_requests")
+                .setDescription("Callers waiting for a connection to be released")
+                .setUnit("{request}")
+                .buildWithCallback(measurement -> measurement.record(pool.pendingRequests(), common));
+    }
+
+    // Adaptive concurrency limits per route (-Dserver.limiter): the current limit next to the requests holding and
+    // waiting for a permit, and the requests shed. A limit dropping while latency rises is the limiter doing its job.
+    public void observeConcurrencyLimits(ConcurrencyLimits limits) {
+        meter().gaugeBuilder("http.server.concurrency.limit")
+                .setDescription("Concurrent requests admitted per route")
+                .setUnit("{request}")
+                .ofLongs()
+                .buildWithCallback(measurement -> limits.forEach(limiter ->
+                        measurement.record(limiter.limit(), Attributes.of(HttpAttributes.HTTP_ROUTE, limiter.route()))));
+
+        AttributeKey<String> stateKey = AttributeKey.stringKey("state");
+        meter().upDownCounterBuilder("http.server.concurrency.permits")
+                .setDescription("Requests holding a concurrency permit, or waiting for one")
+                .setUnit("{request}")
+                .buildWithCallback(measurement -> limits.forEach(limiter -> {
+                    measurement.record(limiter.inFlight(), Attributes.of(HttpAttributes.HTTP_ROUTE, limiter.route(), stateKey, "in_flight"));
+                    measurement.record(limiter.waiting(), Attributes.of(HttpAttributes.HTTP_ROUTE, limiter.route(), stateKey, "waiting"));
+                }));
+
+        meter().counterBuilder("http.server.concurrency.rejections")
+                .setDescription("Requests rejected with 503 because their route was at its concurrency limit")
+                .setUnit("{request}")
+                .buildWithCallback(measurement -> limits.forEach(limiter ->
+                        measurement.record(limiter.rejected(), Attributes.of(HttpAttributes.HTTP_ROUTE, limiter.route()))));
+    }
+
+    // Circuit breaker and bulkhead of one dependency (DependencyGuard): the breaker's state (1 for the current one), the
+    // failure and slow-call rates it decides on, and the bulkhead's calls in flight next to its limit.
+    public void observeDependencyGuard(DependencyGuard guard) {
+        AttributeKey<String> dependencyKey = AttributeKey.stringKey("dependency");
+        AttributeKey<String> stateKey = AttributeKey.stringKey("circuit_breaker.state");
+        AttributeKey<String> kindKey = AttributeKey.stringKey("kind");
+        CircuitBreaker breaker = guard.breaker();
+        CircuitBreaker.State[] states = CircuitBreaker.State.values();
+        Attributes[] stateAttributes = new Attributes[states.length];
+        for (CircuitBreaker.State state : states) {
+            stateAttributes[state.ordinal()] = Attributes.of(dependencyKey, guard.name(), stateKey, DependencyGuard.attributeValue(state));
+        }
+        Attributes failure = Attributes.of(dependencyKey, guard.name(), kindKey, "failure");
+        Attributes slow = Attributes.of(dependencyKey, guard.name(), kindKey, "slow");
+        Attributes common = Attributes.of(dependencyKey, guard.name());
+
+        meter().gaugeBuilder("resilience.circuit_breaker.state")
+                .setDescription("1 for the state the dependency's circuit breaker is in, 0 for the others")
+                .setUnit("1")
+                .ofLongs()
+                .buildWithCallback(measurement -> {
+                    CircuitBreaker.State current = breaker.state();
+                    for (CircuitBreaker.State state : states) {
+                        measurement.record(state == current ? 1 : 0, stateAttributes[state.ordinal()]);
+                    }
+                });
+
+        meter().gaugeBuilder("resilience.circuit_breaker.call_rate")
+                .setDescription("Share of the recent calls that failed, or were slow")
+                .setUnit("1")
+                .buildWithCallback(measurement -> {
+                    measurement.record(breaker.failureRate(), failure);
+                    measurement.record(breaker.slowCallRate(), slow);
+                });
+
+        meter().upDownCounterBuilder("resilience.bulkhead.calls")
+                .setDescription("Calls to the dependency in flight")
+                .setUnit("{call}")
+                .buildWithCallback(measurement -> measurement.record(guard.bulkhead().inFlight(), common));
+
+        meter().upDownCounterBuilder("resilience.bulkhead.limit")
+                .setDescription("Calls to the dependency allowed in flight at once")
+                .setUnit("{call}")
+                .buildWithCallback(measurement -> measurement.record(guard.bulkhead().maxConcurrent(), common));
+    }
+
+    // Disk spools of the telemetry exporters (if enabled), per signal. A growing depth means the collector is behind;
+    // evicted drops mean the disk budget ran out and the oldest telemetry was lost.
+    public void observeSpools(List<Spool> spools) {
+        if (spools.isEmpty()) return;
+        AttributeKey<String> signalKey = AttributeKey.stringKey("signal");
+        AttributeKey<String> reasonKey = AttributeKey.stringKey("reason");
+
+        meter().upDownCounterBuilder("otel.spool.depth")
+                .setDescription("Export requests waiting in the spool")
+                .setUnit("{request}")
+                .buildWithCallback(measurement -> spools.forEach(spool ->
+                        measurement.record(spool.depth(), Attributes.of(signalKey, spool.signal()))));
+
+        meter().upDownCounterBuilder("otel.spool.size")
+                .setDescription("Payload bytes waiting in the spool")
+                .setUnit("By")
+                .buildWithCallback(measurement -> spools.forEach(spool ->
+                        measurement.record(spool.bytes(), Attributes.of(signalKey, spool.signal()))));
+
+        meter().counterBuilder("otel.spool.replayed")
+                .setDescription("Export requests delivered to the collector from the spool")
+                .setUnit("{request}")
+                .buildWithCallback(measurement -> spools.forEach(spool ->
+                        measurement.record(spool.replayed(), Attributes.of(signalKey, spool.signal()))));
+
+        meter().counterBuilder("otel.spool.drops")
+                .setDescription("Export requests dropped by the spool")
+                .setUnit("{request}")
+                .buildWithCallback(measurement -> spools.forEach(spool -> {
+                    measurement.record(spool.evicted(), Attributes.of(signalKey, spool.signal(), reasonKey, "evicted"));
+                    measurement.record(spool.oversized(), Attributes.of(signalKey, spool.signal(), reasonKey, "oversized"));
+                    measurement.record(spool.rejected(), Attributes.of(signalKey, spool.signal(), reasonKey, "rejected"));
+                }));
+    }
+
+    // Root sampling decisions of the rate-limiting sampler, per span name. With the rate fixed, "sampled" stays flat
+    // as traffic grows and "dropped" absorbs the rest. Traces continued from a caller's traceparent aren't counted.
+    public void observeSampler(RateLimitingSampler sampler) {
+        AttributeKey<String> spanNameKey = AttributeKey.stringKey("span.name");
+        AttributeKey<String> decisionKey = AttributeKey.stringKey("sampling.decision");
+
+        meter().counterBuilder("otel.sampler.decisions")
+                .setDescription("Root span sampling decisions of the rate-limiting sampler")
+                .setUnit("{span}")
+                .buildWithCallback(measurement -> sampler.forEachCount((spanName, counts) -> {
+                    measurement.record(counts.sampled(), Attributes.of(spanNameKey, spanName, decisionKey, "sampled"));
+                    measurement.record(counts.dropped(), Attributes.of(spanNameKey, spanName, decisionKey, "dropped"));
+                }));
+
+        meter().gaugeBuilder("otel.sampler.rate")
+                .setDescription("Configured new traces per second per span name")
+                .setUnit("{trace}/s")
+                .buildWithCallback(measurement -> measurement.record(sampler.rate()));
+    }
+
+    // In-process tail sampling: what is buffered (memory), what was evicted before a decision (lost traces),
+    // how decisions went, and how long spans waited for their trace's decision.
+    public void observeTailSampling(TailSamplingSpanProcessor processor) {
+        AttributeKey<String> reasonKey = AttributeKey.stringKey("reason");
+
+        processor.recordDecisionWaitTo(meter()
+                .histogramBuilder("otel.tail_sampling.decision.wait")
+                .setDescription("Time from the first buffered span of a trace to its sampling decision")
+                .setUnit("s")
+                .build());
+
+        meter().upDownCounterBuilder("otel.tail_sampling.buffered.traces")
+                .setDescription("Traces waiting for their local root span to end")
+                .setUnit("{trace}")
+                .buildWithCallback(measurement -> measurement.record(processor.bufferedTraces()));
+
+        meter().upDownCounterBuilder("otel.tail_sampling.buffered.spans")
+                .setDescription("Ended spans held back until their trace is decided")
+                .setUnit("{span}")
+                .buildWithCallback(measurement -> measurement.record(processor.bufferedSpans()));
+
+        meter().counterBuilder("otel.tail_sampling.decisions")
+                .setDescription("Tail sampling decisions by outcome and reason")
+                .setUnit("{trace}")
+                .buildWithCallback(measurement -> processor.decisions().forEach(
+                        (attributes, count) -> measurement.record(count, attributes)));
+
+        Attributes capacity = Attributes.of(reasonKey, "capacity");
+        Attributes age = Attributes.of(reasonKey, "age");
+        Attributes spanLimit = Attributes.of(reasonKey, "span_limit");
+        meter().counterBuilder("otel.tail_sampling.evicted.spans")
+                .setDescription("Spans dropped before their trace was decided")
+                .setUnit("{span}")
+                .buildWithCallback(measurement -> {
+                    measurement.record(processor.evictedForCapacity(), capacity);
+                    measurement.record(processor.evictedForAge(), age);
+                    measurement.record(processor.droppedOverSpanLimit(), spanLimit);
+                });
+    }
+
+    // The metric pipeline itself: attribute sets per metric in the last export, and how often a metric overflowed its
+    // cardinality limit. One attribute (the metric name), so these stay small however many series the others have.
+    public void observeMetricCardinality(OverflowDetectingMetricExporter exporter) {
+        AttributeKey<String> metricNameKey = AttributeKey.stringKey("otel.metric.name");
+
+        meter().gaugeBuilder("otel.metric.series")
+                .setDescription("Data points (attribute sets) of a metric in the last export")
+                .setUnit("{series}")
+                .ofLongs()
+                .buildWithCallback(measurement -> exporter.forEachSeriesCount(
+                        (name, count) -> measurement.record(count, Attributes.of(metricNameKey, name))));
+
+        meter().counterBuilder("otel.metric.overflow")
+                .setDescription("Exports in which a metric had more attribute sets than its cardinality limit")
+                .setUnit("{export}")
+                .buildWithCallback(measurement -> exporter.forEachOverflow(
+                        (name, count) -> measurement.record(count, Attributes.of(metricNameKey, name))));
+    }
+
+    // Log lines offered to the OpenTelemetry appender (LogSamplingFilter): kept, or dropped because their trace was
+    // outside the ratio or their template was over the dedupe limit. What Loki receives is the "kept" share.
+    public void observeLogSampling() {
+        AttributeKey<String> decisionKey = AttributeKey.stringKey("sampling.decision");
+        AttributeKey<String> reasonKey = AttributeKey.stringKey("reason");
+        Attributes kept = Attributes.of(decisionKey, "kept", reasonKey, "none");
+        Attributes ratio = Attributes.of(decisionKey, "dropped", reasonKey, "ratio");
+        Attributes duplicate = Attributes.of(decisionKey, "dropped", reasonKey, "duplicate");
+
+        meter().counterBuilder("otel.log_sampling.lines")
+                .setDescription("Log lines offered to the OpenTelemetry appender, by sampling decision")
+                .setUnit("{line}")
+                .buildWithCallback(measurement -> {
+                    measurement.record(LogSamplingFilter.shippedLines(), kept);
+                    measurement.record(LogSamplingFilter.sampledOutLines(), ratio);
+                    measurement.record(LogSamplingFilter.duplicateLines(), duplicate);
+                });
+    }
+
+    // Resolved once per instrumentation scope; create the MetricsProvider after SdkOtelConfig.init().
     public Meter meter() {
-        return GlobalOpenTelemetry.meterBuilder("com.gelerion.otel.playground.http")
-                .setSchemaUrl(SchemaUrls.V1_37_0) // See the README for more details.
-                .setInstrumentationVersion("1.0.0")
-                .build();
+        return TelemetryHandles.meter();
     }
 
 }
@@ -0,0 +1,204 @@
+package com.gelerion.otel.playground.repository;
+
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+A small bounded JDBC connection pool. Deliberately minimal (no background validation, no idle eviction) so that
+everything on the acquire path is visible in this file.
+
+- At most maxSize connections exist. The permits of a fair semaphore are the pool capacity: a caller holding a permit
+  either reuses an idle connection or opens a new one, so the number of open connections can never exceed the limit.
+- Callers wait at most acquireTimeout for a permit and then fail, instead of queueing forever behind a slow database.
+- Idle connections are reused LIFO: the most recently used one has the warmest statement cache.
+- Each connection keeps its own LRU cache of prepared statements, so the hot query is parsed and planned once per
+  connection, not once per request.
+- Every acquire() hands out a fresh PooledConnection lease over the physical connection. Closing a lease twice (say
+  try-with-resources plus an explicit close on an error path) returns the connection once: a second release would
+  free a permit twice and let the pool hand out more connections than its size, or return a connection that another
+  caller has borrowed since.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // The pool's db.client.connection.pool.name, on all of its metrics.
+    public static final String POOL_NAME = "appdb";
+    public static final AttributeKey<String> POOL_NAME_KEY = AttributeKey.stringKey("db.client.connection.pool.name");
+    private static final Attributes POOL_ATTRIBUTES = Attributes.of(POOL_NAME_KEY, POOL_NAME);
+
+    private final ConnectionPoolConfig config;
+    private final MetricsProvider metricsProvider;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<CachedConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private volatile boolean closed;
+
+    public ConnectionPool(ConnectionPoolConfig config, MetricsProvider metricsProvider) {
+        this.config = config;
+        this.metricsProvider = metricsProvider;
+        this.permits = new Semaphore(config.maxSize(), true);
+        metricsProvider.observeConnectionPool(this);
+    }
+
+    // Borrows a connection; closing the returned handle gives it back to the pool.
+    public PooledConnection acquire() throws SQLException, InterruptedException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        long start = System.nanoTime();
+        boolean acquired = permits.tryAcquire(config.acquireTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        metricsProvider.dbConnectionWaitTimeHistogram().record((System.nanoTime() - start) / 1_000_000_000.0, POOL_ATTRIBUTES);
+        if (!acquired) {
+            throw new SQLTransientConnectionException("Timed out after " + config.acquireTimeout().toMillis()
+                    + "ms waiting for a connection (pool size " + config.maxSize() + ")");
+        }
+
+        try {
+            CachedConnection connection = idle.pollFirst();
+            if (connection == null) {
+                connection = new CachedConnection(DriverManager.getConnection(config.url(), config.user(), config.password()));
+            }
+            inUse.incrementAndGet();
+            return new PooledConnection(connection);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(CachedConnection connection) {
+        inUse.decrementAndGet();
+        if (closed || connection.broken) {
+            connection.closeQuietly();
+        } else {
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+
+    public int maxSize() {
+        return config.maxSize();
+    }
+
+    public int inUseConnections() {
+        return inUse.get();
+    }
+
+    public int idleConnections() {
+        return idle.size();
+    }
+
+    // Callers blocked in acquire(), waiting for a connection to be released.
+    public int pendingRequests() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        CachedConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.closeQuietly();
+        }
+    }
+
+    // A borrowed connection. Not thread-safe: it belongs to one caller between acquire() and close(). Only the first
+    // close() returns the connection; any later call is ignored, and the lease can't be used any more.
+    public final class PooledConnection implements AutoCloseable {
+        private final CachedConnection delegate;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private PooledConnection(CachedConnection delegate) {
+            this.delegate = delegate;
+        }
+
+        // Returns a cached statement for this SQL, preparing it on first use. Parameters from a previous use are
+        // overwritten by the caller, so the statement doesn't need to be cleared.
+        public PreparedStatement prepare(String sql) throws SQLException {
+            return open().prepare(sql);
+        }
+
+        public Connection connection() throws SQLException {
+            return open().connection;
+        }
+
+        // Marks the connection as unusable (e.g. after an I/O error); it is closed instead of being returned to the pool.
+        public void discard() {
+            if (!closed.get()) delegate.broken = true;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) release(delegate);
+        }
+
+        private CachedConnection open() throws SQLException {
+            if (closed.get()) throw new SQLException("Connection already returned to the pool");
+            return delegate;
+        }
+    }
+
+    // A physical connection and its statement cache; lives in the pool across leases.
+    private final class CachedConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+        private boolean broken;
+
+        private CachedConnection(Connection connection) {
+            this.connection = connection;
+            // Access-ordered, so the least recently used statement is closed once the cache is full.
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= config.statementCacheSize()) return false;
+                    closeStatementQuietly(eldest.getValue());
+                    return true;
+                }
+            };
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql);
+                statement.setQueryTimeout(config.queryTimeoutSeconds());
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        private void closeQuietly() {
+            statements.values().forEach(ConnectionPool::closeStatementQuietly);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.atWarn().setCause(e).log("Failed to close a pooled connection");
+            }
+        }
+    }
+
+    private static void closeStatementQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.atWarn().setCause(e).log("Failed to close a cached statement");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.gelerion.otel.playground.repository;
+
+import java.time.Duration;
+
+/*
+Connection pool settings, all overridable with system properties:
+  -Ddb.url                        JDBC URL (default: in-memory H2 database "appdb", kept alive for the JVM lifetime)
+  -Ddb.user / -Ddb.password       credentials (default: sa / empty)
+  -Ddb.pool.size                  maximum open connections (default: 10)
+  -Ddb.pool.acquireTimeoutMs      how long a caller waits for a free connection before failing (default: 1000)
+  -Ddb.pool.statementCacheSize    prepared statements kept open per connection (default: 32)
+  -Ddb.queryTimeoutSeconds        JDBC query timeout, 0 = none (default: 5)
+ */
+public record ConnectionPoolConfig(String url,
+                                   String user,
+                                   String password,
+                                   int maxSize,
+                                   Duration acquireTimeout,
+                                   int statementCacheSize,
+                                   int queryTimeoutSeconds) {
+
+    public static final String DEFAULT_URL = "jdbc:h2:mem:appdb;DB_CLOSE_DELAY=-1";
+
+    public ConnectionPoolConfig {
+        if (maxSize < 1) throw new IllegalArgumentException("db.pool.size must be at least 1, got " + maxSize);
+        if (statementCacheSize < 0) throw new IllegalArgumentException("db.pool.statementCacheSize must not be negative");
+    }
+
+    public static ConnectionPoolConfig fromSystemProperties() {
+        return new ConnectionPoolConfig(
+                System.getProperty("db.url", DEFAULT_URL),
+                System.getProperty("db.user", "sa"),
+                System.getProperty("db.password", ""),
+                Integer.getInteger("db.pool.size", 10),
+                Duration.ofMillis(Long.getLong("db.pool.acquireTimeoutMs", 1_000)),
+                Integer.getInteger("db.pool.statementCacheSize", 32),
+                Integer.getInteger("db.queryTimeoutSeconds", 5));
+    }
+}
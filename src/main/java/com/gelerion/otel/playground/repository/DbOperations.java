@@ -1,60 +1,89 @@
 package com.gelerion.otel.playground.repository;
 
+import com.gelerion.otel.playground.concurrency.SingleFlight;
 import com.gelerion.otel.playground.feature.flags.FeatureFlag;
-import com.gelerion.otel.playground.filters.before.OtelContextPropagationBeforeFilter;
+import com.gelerion.otel.playground.feature.flags.FlaggedKey;
+import com.gelerion.otel.playground.config.otel.TelemetryHandles;
 import com.gelerion.otel.playground.metrics.MetricsProvider;
+import com.gelerion.otel.playground.resilience.CallNotPermittedException;
+import com.gelerion.otel.playground.resilience.DependencyGuard;
+import com.gelerion.otel.playground.resilience.ResilienceConfig;
 import io.opentelemetry.api.common.Attributes;
-import io.opentelemetry.api.common.AttributesBuilder;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.SpanKind;
 import io.opentelemetry.api.trace.StatusCode;
 import io.opentelemetry.context.Scope;
 import io.opentelemetry.semconv.CodeAttributes;
 import io.opentelemetry.semconv.DbAttributes;
-import io.opentelemetry.semconv.NetworkAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
-import java.util.concurrent.ThreadLocalRandom;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
 
 // Most of this is done automatically by the agent, but we are doing it manually for the demo.
 public class DbOperations {
     private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-    private final MetricsProvider metricsProvider;
+    private static final String FIND_USER_BY_NAME = "SELECT id, name, email FROM users WHERE name = ?";
+
+    // Low-cardinality attributes
+    private static final Attributes COMMON_ATTRIBUTES = Attributes.builder()
+            .put(DbAttributes.DB_SYSTEM_NAME, "h2")
+            .put(DbAttributes.DB_NAMESPACE, "appdb")         // The database/schema
+            .put(DbAttributes.DB_OPERATION_NAME, "SELECT")   // SELECT/INSERT/UPDATE/DELETE
+            .put(DbAttributes.DB_COLLECTION_NAME, "users")  // If known (a bounded value)
+            .build();
+
+    // Metric attributes. There are only two outcomes, so both sets are built once instead of on every call.
+    private static final Attributes SUCCESS_METRIC_ATTRIBUTES = COMMON_ATTRIBUTES.toBuilder()
+            .put("component", "db")
+            .put("outcome", "success")
+            .build();
+    private static final Attributes ERROR_METRIC_ATTRIBUTES = COMMON_ATTRIBUTES.toBuilder()
+            .put("component", "db")
+            .put("outcome", "error")
+            .put("exceptionType", "RuntimeException")
+            .build();
 
-    public DbOperations(MetricsProvider metricsProvider) {
+    private final MetricsProvider metricsProvider;
+    private final ConnectionPool connectionPool;
+    // Concurrent lookups of the same name, under the same feature flag, share one query.
+    private final SingleFlight<FlaggedKey<String>, String> findUserFlights;
+    // Circuit breaker and bulkhead: lookups slower than 1.5s (the baseline takes up to 0.8s) count as slow, and at
+    // most 20 run at once, twice the default connection pool size. Only the query itself is guarded, see findUserByName.
+    private final DependencyGuard guard;
+
+    public DbOperations(MetricsProvider metricsProvider, ConnectionPool connectionPool) {
         this.metricsProvider = metricsProvider;
+        this.connectionPool = connectionPool;
+        this.findUserFlights = new SingleFlight<>("db", metricsProvider);
+        this.guard = DependencyGuard.create(
+                ResilienceConfig.fromSystemProperties("db", Duration.ofMillis(1_500), 20), metricsProvider);
     }
 
     // Best practices for such operations:
     //  - Create a child span around the DB operation and attach DB semantic attributes.
     //  - Record the duration (optional: your histogram) and mark errors on exceptions.
+    // Fails fast with a CallNotPermittedException, without a query, while the database's circuit breaker is open or
+    // its bulkhead is full.
     public String findUserByName(String name) {
         long startTime = System.nanoTime();
         // Creates a new span. See the README for span naming best practices.
-        Span span = OtelContextPropagationBeforeFilter.tracer().spanBuilder("DB SELECT users")
+        Span span = TelemetryHandles.tracer().spanBuilder("DB SELECT users")
                 .setSpanKind(SpanKind.CLIENT)
                 .startSpan(); // Creates and starts a span now, with a parent chosen from either setParent(...) or Context.current().
 
-        // Low-cardinality attributes
-        Attributes commonAttributes = Attributes.builder()
-                .put(DbAttributes.DB_SYSTEM_NAME, "postgresql")
-                .put(DbAttributes.DB_NAMESPACE, "appdb")         // The database/schema
-                .put(DbAttributes.DB_OPERATION_NAME, "SELECT")   // SELECT/INSERT/UPDATE/DELETE
-                .put(DbAttributes.DB_COLLECTION_NAME, "users")  // If known (a bounded value)
-                .build();
-
-        span.setAllAttributes(commonAttributes);
+        span.setAllAttributes(COMMON_ATTRIBUTES);
         // Span-specific attributes
         span.setAttribute(CodeAttributes.CODE_FUNCTION_NAME, "DbOperations/findUserByName");
-        span.setAttribute(DbAttributes.DB_QUERY_TEXT, "SELECT * FROM users WHERE name = ?"); // A sanitized query
-        span.setAttribute(NetworkAttributes.NETWORK_PEER_ADDRESS, "db01.internal");
-        span.setAttribute(NetworkAttributes.NETWORK_PEER_PORT, 9999);
-
-        // Metric attributes
-        AttributesBuilder metricAttrs = Attributes.builder().putAll(commonAttributes);
+        span.setAttribute(DbAttributes.DB_QUERY_TEXT, FIND_USER_BY_NAME); // A parameterized (hence sanitized) query
+        // The database is embedded (in-process), so there are no server.address/network.peer.* attributes to set.
 
         // Remember: The scope controls what the "current" context is on this thread. Closing it restores the previous context.
         // It does not end the span.
@@ -62,18 +91,30 @@ public class DbOperations {
             // Inside the try block, Span.current() is your DB span; logs and any child spans will naturally attach to it.
             logger.atInfo().addKeyValue("user.name", name).log("Fetch user details from DB");
 
-            // Simulates a DB call or an exception.
-            randomWaitOrThrow();
-            // Optional: records the row count as an attribute (a small integer).
-            //span.setAttribute("db.rows_affected", 1);
+            // If another request is already looking up this name, waits for its result (this span then links to
+            // the leader's span) instead of running the same query again. Only the leader's query goes through the
+            // guard, so N coalesced lookups take one bulkhead slot and count as one call.
+            String result = findUserFlights.execute(FlaggedKey.current(name), () -> guard.call(() -> {
+                // Simulates the network round trip and an unreachable database, driven by the feature flag.
+                randomWaitOrThrow();
+                return queryUserByName(name);
+            }, user -> false));
 
             // Records metrics.
             double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
-            metricsProvider.dbRequestDurationHistogram().record(seconds, metricAttrs
-                    .put("component", "db")
-                    .put("outcome", "success").build());
-
-            return "Found user: " + name;
+            metricsProvider.dbRequestDurationHistogram().record(seconds, SUCCESS_METRIC_ATTRIBUTES);
+
+            return result;
+        } catch (CallNotPermittedException e) {
+            // No query was made: the span keeps the "dependency.call.rejected" event, and the controller degrades.
+            throw e;
+        } catch (CancellationException | InterruptedException e) {
+            // This request gave up (e.g. the parallel recommendations call failed) while it waited for the database, a
+            // connection or a coalesced lookup: not a database failure, so no error log, status or metric.
+            span.addEvent("Lookup cancelled");
+            if (e instanceof CancellationException cancelled) throw cancelled;
+            Thread.currentThread().interrupt();
+            throw new CancellationException("User lookup cancelled");
         } catch (Exception e) {
             logger.atError().setCause(e).addKeyValue("user.name", name).log("Failed to fetch user details from DB");
             span.recordException(e);
@@ -81,37 +122,44 @@ public class DbOperations {
 
             // Records metrics while the span is current to capture exemplars.
             double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
-            metricsProvider.dbRequestDurationHistogram().record(seconds, metricAttrs
-                    .put("component", "db")
-                    .put("outcome", "error")
-                    .put("exceptionType", "RuntimeException")
-                    .build());
+            metricsProvider.dbRequestDurationHistogram().record(seconds, ERROR_METRIC_ATTRIBUTES);
 
             if (e instanceof RuntimeException ex) throw ex;
             else throw new RuntimeException(e);
         } finally {
-            // Records metrics.
-            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
-            metricsProvider.dbRequestDurationHistogram().record(seconds, metricAttrs.put("component", "db").build());
-
             // IMPORTANT: Ends the span so it can be processed and exported.
             span.end();
         }
     }
 
-    private void randomWaitOrThrow() {
-        FeatureFlag flag = FeatureFlag.current();
-        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+    // Borrows a pooled connection and runs the cached prepared statement. Waiting for a connection is part of the
+    // span, which is what the caller experiences; the wait itself is measured by db.client.connection.wait_time.
+    private String queryUserByName(String name) throws SQLException, InterruptedException {
+        try (ConnectionPool.PooledConnection connection = connectionPool.acquire()) {
+            try {
+                PreparedStatement statement = connection.prepare(FIND_USER_BY_NAME);
+                statement.setString(1, name);
+                try (ResultSet rs = statement.executeQuery()) {
+                    // Optional: records the row count as an attribute (a small integer).
+                    //span.setAttribute("db.response.returned_rows", 1);
+                    return rs.next()
+                            ? "Found user: " + rs.getString("name") + " <" + rs.getString("email") + ">"
+                            : "User not found: " + name;
+                }
+            } catch (SQLException e) {
+                // After a query timeout the connection is still usable; after anything else it may not be.
+                if (!(e instanceof SQLTransientException)) connection.discard();
+                throw e;
+            }
+        }
+    }
 
-        int waitMillis = rnd.nextInt(flag.dbMinLatency(), flag.dbMaxLatency());
+    private void randomWaitOrThrow() {
         try {
-            Thread.sleep(waitMillis);
+            FeatureFlag.current().db().inject("Database not reachable");
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
-
-        if (rnd.nextDouble() < flag.dbErrorRate()) {
-            throw new RuntimeException("Database not reachable");
+            Thread.currentThread().interrupt();
+            throw new CancellationException("User lookup cancelled");
         }
     }
 }
@@ -0,0 +1,33 @@
+package com.gelerion.otel.playground.repository;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+// Creates and seeds the users table. Idempotent, so it's safe to run against a database that survived a restart.
+public class UsersSchema {
+
+    // The names the load generator and the README examples use.
+    private static final List<String> SEED_USERS = List.of("alpha", "beta", "gamma", "john", "gelerion");
+
+    public static void init(ConnectionPool pool) throws SQLException, InterruptedException {
+        try (ConnectionPool.PooledConnection pooled = pool.acquire();
+             Statement ddl = pooled.connection().createStatement()) {
+            ddl.execute("""
+                    CREATE TABLE IF NOT EXISTS users (
+                        id         BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        name       VARCHAR(64)  NOT NULL UNIQUE,
+                        email      VARCHAR(128) NOT NULL,
+                        created_at TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP
+                    )""");
+
+            var insert = pooled.prepare("MERGE INTO users (name, email) KEY (name) VALUES (?, ?)");
+            for (String name : SEED_USERS) {
+                insert.setString(1, name);
+                insert.setString(2, name + "@example.com");
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+}
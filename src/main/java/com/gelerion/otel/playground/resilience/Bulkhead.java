@@ -0,0 +1,47 @@
+package com.gelerion.otel.playground.resilience;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+At most maxConcurrent calls to one dependency in flight at once. A call beyond that waits up to maxWait for a slot (by
+default not at all) and is then rejected, so a dependency that slows down ties up a bounded number of threads, not
+every request's.
+
+A plain (non-fair) semaphore: tryAcquire without a wait is one CAS, and a waiting virtual thread unmounts.
+ */
+public final class Bulkhead {
+    private final int maxConcurrent;
+    private final long maxWaitNanos;
+    private final Semaphore slots;
+
+    public Bulkhead(ResilienceConfig config) {
+        this.maxConcurrent = config.maxConcurrent();
+        this.maxWaitNanos = config.maxWait().toNanos();
+        this.slots = new Semaphore(maxConcurrent);
+    }
+
+    // True if the call may go ahead; it must then call release() once it's done.
+    public boolean tryAcquire() throws InterruptedException {
+        return maxWaitNanos == 0
+                ? slots.tryAcquire()
+                : slots.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void release() {
+        slots.release();
+    }
+
+    public int maxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int inFlight() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{inFlight=" + inFlight() + "/" + maxConcurrent + "}";
+    }
+}
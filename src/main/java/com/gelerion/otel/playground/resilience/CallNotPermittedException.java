@@ -0,0 +1,25 @@
+package com.gelerion.otel.playground.resilience;
+
+// A call that was never made: the dependency's circuit breaker is open, or its bulkhead is full.
+public class CallNotPermittedException extends RuntimeException {
+    public enum Reason { CIRCUIT_OPEN, BULKHEAD_FULL }
+
+    private final String dependency;
+    private final Reason reason;
+
+    public CallNotPermittedException(String dependency, Reason reason) {
+        super(reason == Reason.CIRCUIT_OPEN
+                ? "Circuit breaker of " + dependency + " is open"
+                : "Bulkhead of " + dependency + " is full");
+        this.dependency = dependency;
+        this.reason = reason;
+    }
+
+    public String dependency() {
+        return dependency;
+    }
+
+    public Reason reason() {
+        return reason;
+    }
+}
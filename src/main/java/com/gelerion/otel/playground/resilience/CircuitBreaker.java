@@ -0,0 +1,219 @@
+package com.gelerion.otel.playground.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+A circuit breaker over the outcomes of the most recent calls to one dependency:
+  - CLOSED     every call goes through. Once the window holds at least minCalls outcomes and the failure rate or the
+               slow-call rate reaches its threshold, the breaker opens.
+  - OPEN       every call is rejected, without touching the dependency, for openDuration.
+  - HALF_OPEN  the first call after that moves the breaker here: halfOpenCalls trial calls go through, the others are
+               still rejected. Their rates decide: below both thresholds the breaker closes (with an empty window),
+               otherwise it opens again for another openDuration.
+
+Lock-free. The state, its window and (half-open) its trial permits live in one Phase object behind an
+AtomicReference, and a transition is a CAS from the phase it was decided in to the next one: of two threads deciding
+the same transition, one wins and the other's CAS is a no-op. Admitting a call while closed is one volatile read.
+A call's outcome is recorded into the phase that admitted it, and dropped if that phase has ended since: a slow call
+admitted before the breaker opened can't count towards the trial calls.
+ */
+public final class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Called by the thread whose call (or outcome) made the breaker change state.
+    @FunctionalInterface
+    public interface TransitionListener {
+        void onTransition(State from, State to, double failureRate, double slowCallRate);
+    }
+
+    private final ResilienceConfig config;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final TransitionListener listener;
+    private final AtomicReference<Phase> phase;
+
+    public CircuitBreaker(ResilienceConfig config, TransitionListener listener) {
+        this.config = config;
+        this.slowCallNanos = config.slowCall().toNanos();
+        this.openNanos = config.openDuration().toNanos();
+        this.listener = listener;
+        this.phase = new AtomicReference<>(closed());
+    }
+
+    // The phase the call is admitted in (hand it back to onResult or release), or null if it is rejected.
+    public Phase tryAcquire() {
+        while (true) {
+            Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED -> {
+                    return current;
+                }
+                case HALF_OPEN -> {
+                    return current.tryTakeTrialPermit() ? current : null;
+                }
+                case OPEN -> {
+                    if (System.nanoTime() - current.enteredAtNanos < openNanos) return null;
+                    // Lets trial calls through: whoever wins the CAS (this thread or another) starts the half-open
+                    // phase, and everyone then competes for its permits.
+                    transition(current, halfOpen());
+                }
+            }
+        }
+    }
+
+    // Records the outcome of an admitted call, and opens or closes the breaker if that tips the rates.
+    public void onResult(Phase admitted, long durationNanos, boolean failed) {
+        if (phase.get() != admitted) return;
+        Window window = admitted.window;
+        window.record(failed, durationNanos >= slowCallNanos);
+
+        int calls = window.calls();
+        if (admitted.state == State.CLOSED) {
+            if (calls >= config.minCalls() && tripped(window, calls)) transition(admitted, open());
+        } else if (admitted.state == State.HALF_OPEN && calls >= config.halfOpenCalls()) {
+            transition(admitted, tripped(window, calls) ? open() : closed());
+        }
+    }
+
+    // An admitted call that ended without saying anything about the dependency (e.g. it was cancelled): a trial
+    // permit is handed back, nothing is recorded.
+    public void release(Phase admitted) {
+        if (admitted.state == State.HALF_OPEN) admitted.trialPermits.incrementAndGet();
+    }
+
+    private boolean tripped(Window window, int calls) {
+        return window.failures() >= config.failureRateThreshold() * calls
+                || window.slowCalls() >= config.slowCallRateThreshold() * calls;
+    }
+
+    private void transition(Phase from, Phase to) {
+        if (!phase.compareAndSet(from, to)) return;
+        listener.onTransition(from.state, to.state, from.window.failureRate(), from.window.slowCallRate());
+    }
+
+    private Phase closed() {
+        return new Phase(State.CLOSED, new Window(config.windowSize()), 0);
+    }
+
+    private Phase open() {
+        return new Phase(State.OPEN, Window.EMPTY, 0);
+    }
+
+    private Phase halfOpen() {
+        return new Phase(State.HALF_OPEN, new Window(config.halfOpenCalls()), config.halfOpenCalls());
+    }
+
+    public State state() {
+        return phase.get().state;
+    }
+
+    // Rates over the current phase's window (0 while open).
+    public double failureRate() {
+        return phase.get().window.failureRate();
+    }
+
+    public double slowCallRate() {
+        return phase.get().window.slowCallRate();
+    }
+
+    public String name() {
+        return config.name();
+    }
+
+    @Override
+    public String toString() {
+        Phase current = phase.get();
+        return "CircuitBreaker{" + config.name() + ", " + current.state + ", calls=" + current.window.calls()
+                + ", failureRate=" + current.window.failureRate() + ", slowCallRate=" + current.window.slowCallRate() + "}";
+    }
+
+    // One stay in a state. Only its counters change; a transition replaces the whole phase.
+    public static final class Phase {
+        private final State state;
+        private final long enteredAtNanos = System.nanoTime();
+        private final Window window;
+        private final AtomicInteger trialPermits;
+
+        private Phase(State state, Window window, int trialPermits) {
+            this.state = state;
+            this.window = window;
+            this.trialPermits = new AtomicInteger(trialPermits);
+        }
+
+        private boolean tryTakeTrialPermit() {
+            while (true) {
+                int left = trialPermits.get();
+                if (left <= 0) return false;
+                if (trialPermits.compareAndSet(left, left - 1)) return true;
+            }
+        }
+
+        public State state() {
+            return state;
+        }
+    }
+
+    /*
+    The outcomes of the last `size` calls, in a ring: each record overwrites the oldest slot and adjusts the counters
+    by the difference. The counters are updated one after the other, not atomically together, so a concurrent reader
+    may be off by a call or two; calls is bumped last, so a reader that sees n calls also sees their failures.
+     */
+    static final class Window {
+        static final Window EMPTY = new Window(1);
+
+        private static final int RECORDED = 1;
+        private static final int FAILED = 2;
+        private static final int SLOW = 4;
+
+        private final AtomicIntegerArray slots;
+        private final AtomicLong cursor = new AtomicLong();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        Window(int size) {
+            this.slots = new AtomicIntegerArray(size);
+        }
+
+        void record(boolean failed, boolean slow) {
+            int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+            int slot = (int) (cursor.getAndIncrement() % slots.length());
+            int previous = slots.getAndSet(slot, outcome);
+
+            int failedDelta = bit(outcome, FAILED) - bit(previous, FAILED);
+            if (failedDelta != 0) failures.addAndGet(failedDelta);
+            int slowDelta = bit(outcome, SLOW) - bit(previous, SLOW);
+            if (slowDelta != 0) slowCalls.addAndGet(slowDelta);
+            if ((previous & RECORDED) == 0) calls.incrementAndGet();
+        }
+
+        int calls() {
+            return calls.get();
+        }
+
+        int failures() {
+            return failures.get();
+        }
+
+        int slowCalls() {
+            return slowCalls.get();
+        }
+
+        double failureRate() {
+            int n = calls.get();
+            return n == 0 ? 0 : (double) failures.get() / n;
+        }
+
+        double slowCallRate() {
+            int n = calls.get();
+            return n == 0 ? 0 : (double) slowCalls.get() / n;
+        }
+
+        private static int bit(int outcome, int flag) {
+            return (outcome & flag) != 0 ? 1 : 0;
+        }
+    }
+}
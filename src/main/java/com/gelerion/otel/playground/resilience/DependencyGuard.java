@@ -0,0 +1,179 @@
+package com.gelerion.otel.playground.resilience;
+
+import com.gelerion.otel.playground.metrics.MetricsProvider;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.function.Predicate;
+
+/*
+The circuit breaker and the bulkhead of one dependency, checked in that order: while the breaker is open a call is
+rejected before it takes a bulkhead slot, and a call the bulkhead rejects hands its (half-open) trial permit back.
+Either way the caller gets a CallNotPermittedException right away instead of waiting out a dependency that is down.
+
+A call counts as failed if it throws, or if isFailure says so of its result (RemoteClient returns a 5xx rather than
+throwing). It counts as slow if it took at least slowCallMs, failed or not. A cancelled call counts as neither: it says
+nothing about the dependency.
+
+Guard the call that actually reaches the dependency, inside any request coalescing (SingleFlight): the followers of a
+coalesced call take no bulkhead slot and add nothing to the breaker's window, they share the leader's outcome,
+rejection included. Build one with create, which also registers its gauges (MetricsProvider.observeDependencyGuard).
+
+Every transition adds a "circuit_breaker.transition" event to the span of the call that caused it and is counted in
+resilience.circuit_breaker.transitions; every rejection adds a "dependency.call.rejected" event to the caller's span and
+is counted in resilience.rejections{reason=circuit_open|bulkhead_full}.
+ */
+public final class DependencyGuard {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final AttributeKey<String> DEPENDENCY = AttributeKey.stringKey("dependency");
+    private static final AttributeKey<String> FROM = AttributeKey.stringKey("circuit_breaker.state.from");
+    private static final AttributeKey<String> TO = AttributeKey.stringKey("circuit_breaker.state.to");
+    private static final AttributeKey<String> REASON = AttributeKey.stringKey("reason");
+    private static final AttributeKey<Double> FAILURE_RATE = AttributeKey.doubleKey("circuit_breaker.failure_rate");
+    private static final AttributeKey<Double> SLOW_CALL_RATE = AttributeKey.doubleKey("circuit_breaker.slow_call_rate");
+
+    private final String name;
+    private final MetricsProvider metricsProvider;
+    private final CircuitBreaker breaker;
+    private final Bulkhead bulkhead;
+
+    // Interned metric attributes: one set per transition and per rejection reason.
+    private final Map<CircuitBreaker.State, Map<CircuitBreaker.State, Attributes>> transitionAttributes =
+            new EnumMap<>(CircuitBreaker.State.class);
+    private final Map<CallNotPermittedException.Reason, Attributes> rejectionAttributes =
+            new EnumMap<>(CallNotPermittedException.Reason.class);
+
+    public static DependencyGuard create(ResilienceConfig config, MetricsProvider metricsProvider) {
+        DependencyGuard guard = new DependencyGuard(config, metricsProvider);
+        metricsProvider.observeDependencyGuard(guard);
+        return guard;
+    }
+
+    private DependencyGuard(ResilienceConfig config, MetricsProvider metricsProvider) {
+        this.name = config.name();
+        this.metricsProvider = metricsProvider;
+        this.breaker = new CircuitBreaker(config, this::onTransition);
+        this.bulkhead = new Bulkhead(config);
+
+        for (CircuitBreaker.State from : CircuitBreaker.State.values()) {
+            Map<CircuitBreaker.State, Attributes> byTarget = new EnumMap<>(CircuitBreaker.State.class);
+            for (CircuitBreaker.State to : CircuitBreaker.State.values()) {
+                byTarget.put(to, Attributes.of(DEPENDENCY, name, FROM, attributeValue(from), TO, attributeValue(to)));
+            }
+            transitionAttributes.put(from, byTarget);
+        }
+        for (CallNotPermittedException.Reason reason : CallNotPermittedException.Reason.values()) {
+            rejectionAttributes.put(reason, Attributes.of(DEPENDENCY, name, REASON, attributeValue(reason)));
+        }
+    }
+
+    // Runs the call if the breaker and the bulkhead let it through, and records how it went.
+    public <T> T call(Callable<T> call, Predicate<T> isFailure) throws Exception {
+        Permit permit = acquire();
+        T result;
+        try {
+            result = call.call();
+        } catch (Exception | Error e) {
+            if (isCancellation(e)) permit.onIgnored();
+            else permit.onResult(true);
+            throw e;
+        }
+        permit.onResult(isFailure.test(result));
+        return result;
+    }
+
+    // For calls that complete elsewhere (e.g. a CompletableFuture): the permit must get exactly one onResult or
+    // onIgnored, from whichever thread the call completes on.
+    public Permit acquire() {
+        CircuitBreaker.Phase admitted = breaker.tryAcquire();
+        if (admitted == null) throw reject(CallNotPermittedException.Reason.CIRCUIT_OPEN);
+
+        boolean acquired;
+        try {
+            acquired = bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            breaker.release(admitted);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Cancelled while waiting for a " + name + " bulkhead slot");
+        }
+        if (!acquired) {
+            breaker.release(admitted);
+            throw reject(CallNotPermittedException.Reason.BULKHEAD_FULL);
+        }
+        return new Permit(admitted, System.nanoTime());
+    }
+
+    public final class Permit {
+        private final CircuitBreaker.Phase admitted;
+        private final long startNanos;
+
+        private Permit(CircuitBreaker.Phase admitted, long startNanos) {
+            this.admitted = admitted;
+            this.startNanos = startNanos;
+        }
+
+        public void onResult(boolean failed) {
+            bulkhead.release();
+            breaker.onResult(admitted, System.nanoTime() - startNanos, failed);
+        }
+
+        public void onIgnored() {
+            bulkhead.release();
+            breaker.release(admitted);
+        }
+    }
+
+    // Interrupted or cancelled, e.g. the sibling fan-out task failed: not the dependency's fault.
+    public static boolean isCancellation(Throwable error) {
+        return error instanceof CancellationException || error instanceof InterruptedException
+                || error.getCause() instanceof InterruptedException;
+    }
+
+    private CallNotPermittedException reject(CallNotPermittedException.Reason reason) {
+        Attributes attributes = rejectionAttributes.get(reason);
+        Span.current().addEvent("dependency.call.rejected", attributes);
+        metricsProvider.resilienceRejectionsCounter().add(1, attributes);
+        return new CallNotPermittedException(name, reason);
+    }
+
+    private void onTransition(CircuitBreaker.State from, CircuitBreaker.State to, double failureRate, double slowCallRate) {
+        Attributes attributes = transitionAttributes.get(from).get(to);
+        metricsProvider.circuitBreakerTransitionsCounter().add(1, attributes);
+        Span.current().addEvent("circuit_breaker.transition", attributes.toBuilder()
+                .put(FAILURE_RATE, failureRate)
+                .put(SLOW_CALL_RATE, slowCallRate)
+                .build());
+
+        var log = to == CircuitBreaker.State.OPEN ? logger.atWarn() : logger.atInfo();
+        log.addKeyValue("dependency", name)
+                .addKeyValue("circuit_breaker.failure_rate", failureRate)
+                .addKeyValue("circuit_breaker.slow_call_rate", slowCallRate)
+                .log("Circuit breaker of {} went from {} to {}", name, from, to);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public CircuitBreaker breaker() {
+        return breaker;
+    }
+
+    public Bulkhead bulkhead() {
+        return bulkhead;
+    }
+
+    public static String attributeValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,58 @@
+package com.gelerion.otel.playground.resilience;
+
+import java.time.Duration;
+
+/*
+Circuit breaker and bulkhead settings of one dependency (system properties named after it, e.g. for "db"):
+  -Dresilience.db.failureRate        the breaker opens once this share of the recent calls failed (default: 0.5)
+  -Dresilience.db.slowCallRate       ... or once this share of them took longer than slowCallMs (default: 0.5)
+  -Dresilience.db.slowCallMs         a call at least this long is slow (default: per dependency)
+  -Dresilience.db.window             how many of the most recent calls the rates are computed over (default: 50)
+  -Dresilience.db.minCalls           calls needed in the window before the breaker may open (default: 20)
+  -Dresilience.db.openMs             how long an open breaker rejects every call before it lets trial calls through
+                                     (default: 5000)
+  -Dresilience.db.halfOpenCalls      trial calls of a half-open breaker; their rates decide whether it closes or opens
+                                     again (default: 5)
+  -Dresilience.db.bulkhead           calls allowed in flight at once (default: per dependency)
+  -Dresilience.db.bulkheadWaitMs     how long a call waits for a free slot before it is rejected (default: 0)
+ */
+public record ResilienceConfig(String name,
+                               double failureRateThreshold,
+                               double slowCallRateThreshold,
+                               Duration slowCall,
+                               int windowSize,
+                               int minCalls,
+                               Duration openDuration,
+                               int halfOpenCalls,
+                               int maxConcurrent,
+                               Duration maxWait) {
+
+    public ResilienceConfig {
+        String prefix = "resilience." + name + ".";
+        if (failureRateThreshold <= 0 || failureRateThreshold > 1 || slowCallRateThreshold <= 0 || slowCallRateThreshold > 1) {
+            throw new IllegalArgumentException(prefix + "failureRate and " + prefix + "slowCallRate must be in (0, 1]");
+        }
+        if (windowSize < 1 || minCalls < 1 || minCalls > windowSize || halfOpenCalls < 1) {
+            throw new IllegalArgumentException(prefix + "* must satisfy 1 <= minCalls <= window and halfOpenCalls >= 1");
+        }
+        if (maxConcurrent < 1) throw new IllegalArgumentException(prefix + "bulkhead must be at least 1");
+        if (slowCall.isNegative() || openDuration.isNegative() || maxWait.isNegative()) {
+            throw new IllegalArgumentException(prefix + "slowCallMs, .openMs and .bulkheadWaitMs must not be negative");
+        }
+    }
+
+    public static ResilienceConfig fromSystemProperties(String name, Duration slowCall, int maxConcurrent) {
+        String prefix = "resilience." + name + ".";
+        return new ResilienceConfig(
+                name,
+                Double.parseDouble(System.getProperty(prefix + "failureRate", "0.5")),
+                Double.parseDouble(System.getProperty(prefix + "slowCallRate", "0.5")),
+                Duration.ofMillis(Long.getLong(prefix + "slowCallMs", slowCall.toMillis())),
+                Integer.getInteger(prefix + "window", 50),
+                Integer.getInteger(prefix + "minCalls", 20),
+                Duration.ofMillis(Long.getLong(prefix + "openMs", 5_000)),
+                Integer.getInteger(prefix + "halfOpenCalls", 5),
+                Integer.getInteger(prefix + "bulkhead", maxConcurrent),
+                Duration.ofMillis(Long.getLong(prefix + "bulkheadWaitMs", 0)));
+    }
+}
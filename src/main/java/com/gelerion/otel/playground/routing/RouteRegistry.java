@@ -0,0 +1,154 @@
+package com.gelerion.otel.playground.routing;
+
+import spark.Request;
+import spark.Route;
+import spark.Spark;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Maps a concrete request path (/v1/hello/john) back to the route template it was declared with (/v1/hello/:name).
+The template is what goes into span names and the http.route attribute/metric label: raw paths are unbounded and
+create a new time series per distinct value, quickly exceeding the SDK's cardinality limit (2000 series per instrument).
+
+Templates are compiled into a trie of path segments at startup. Matching compares segments in place (no split, no
+regex, no allocation) and follows every branch that fits, static, :param and *, since more than one route may match:
+the one declared first wins, because that's the one Spark runs. With /users/:id declared before /users/me, a request
+for /users/me is handled by the :id route, and is labeled /users/:id.
+
+There is one trie per HTTP method, as Spark matches routes by method and path: GET /users/:id and POST /users/:name
+each keep their own template. Two templates of the same method that only differ in a parameter's name share a node;
+the first one declared keeps it, since that's the route Spark picks too. A HEAD request falls back to the GET routes,
+as it does in Spark.
+
+Routes should be declared through this registry (see get(...)), so the Spark routes and the templates can't diverge.
+ */
+public class RouteRegistry {
+    // Request attribute holding the resolved template, so each filter doesn't resolve it again.
+    public static final String ROUTE_ATTR = "otel.http.route";
+    private static final String UNMATCHED = "";
+
+    private final Map<String, Node> roots = new ConcurrentHashMap<>();
+    private int declared;
+
+    public void get(String template, Route route) {
+        register("GET", template);
+        Spark.get(template, route);
+    }
+
+    public void post(String template, Route route) {
+        register("POST", template);
+        Spark.post(template, route);
+    }
+
+    public synchronized void register(String method, String template) {
+        Node node = roots.computeIfAbsent(method.toUpperCase(Locale.ROOT), m -> new Node(""));
+        int pos = 0;
+        while ((pos = skipSlashes(template, pos)) < template.length()) {
+            int end = segmentEnd(template, pos);
+            node = node.child(template.substring(pos, end));
+            pos = end;
+        }
+        if (node.template == null) {
+            node.order = declared++;
+            node.template = template;
+        }
+    }
+
+    // The route template of the request, or null if no declared route matches (e.g., a 404).
+    public String route(Request request) {
+        String route = request.attribute(ROUTE_ATTR);
+        if (route == null) {
+            route = resolve(request.requestMethod(), request.pathInfo());
+            request.attribute(ROUTE_ATTR, route != null ? route : UNMATCHED);
+        }
+        return route == null || route.isEmpty() ? null : route;
+    }
+
+    public String resolve(String method, String path) {
+        if (method == null || path == null) return null;
+        Node root = roots.get(method);
+        Node route = root != null ? match(root, path, skipSlashes(path, 0)) : null;
+        if (route == null) return "HEAD".equals(method) ? resolve("GET", path) : null;
+        return route.template;
+    }
+
+    // The matching route node declared first, or null.
+    private static Node match(Node node, String path, int pos) {
+        if (pos >= path.length()) {
+            return node.template != null ? node : null;
+        }
+        int end = segmentEnd(path, pos);
+        int next = skipSlashes(path, end);
+
+        Node best = null;
+        for (Node child : node.statics) {
+            if (child.matches(path, pos, end)) {
+                best = firstDeclared(best, match(child, path, next));
+            }
+        }
+        if (node.param != null) {
+            best = firstDeclared(best, match(node.param, path, next));
+        }
+        // A trailing * swallows the rest of the path.
+        if (node.wildcard != null && node.wildcard.template != null) {
+            best = firstDeclared(best, node.wildcard);
+        }
+        return best;
+    }
+
+    private static Node firstDeclared(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return a.order <= b.order ? a : b;
+    }
+
+    private static int skipSlashes(String path, int pos) {
+        while (pos < path.length() && path.charAt(pos) == '/') pos++;
+        return pos;
+    }
+
+    private static int segmentEnd(String path, int pos) {
+        int slash = path.indexOf('/', pos);
+        return slash < 0 ? path.length() : slash;
+    }
+
+    private static final class Node {
+        private final String segment;
+        private volatile Node[] statics = new Node[0];
+        private volatile Node param;
+        private volatile Node wildcard;
+        private volatile String template;
+        // Declaration order of the template, written before it.
+        private int order;
+
+        private Node(String segment) {
+            this.segment = segment;
+        }
+
+        private boolean matches(String path, int start, int end) {
+            return end - start == segment.length() && path.regionMatches(start, segment, 0, segment.length());
+        }
+
+        // Called under the registry lock.
+        private Node child(String segment) {
+            if (segment.startsWith(":")) {
+                return param != null ? param : (param = new Node(segment));
+            }
+            if (segment.equals("*")) {
+                return wildcard != null ? wildcard : (wildcard = new Node(segment));
+            }
+            for (Node child : statics) {
+                if (child.segment.equals(segment)) return child;
+            }
+            Node child = new Node(segment);
+            Node[] grown = Arrays.copyOf(statics, statics.length + 1);
+            grown[statics.length] = child;
+            statics = grown;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.gelerion.otel.playground.sampling;
+
+import java.time.Duration;
+
+/*
+Log sampling settings for the OpenTelemetry appender (system properties), see LogSamplingFilter.
+  -Dotel.logs.sampling.ratio        share of unsampled traces whose log lines are still shipped (default: 0.1)
+  -Dotel.logs.dedupe.limit          lines per message template and window shipped from those traces (default: 5)
+  -Dotel.logs.dedupe.windowMs       length of the dedupe window (default: 10000)
+  -Dotel.logs.dedupe.maxTemplates   templates tracked at once; lines of further templates aren't deduplicated (default: 1000)
+  -Dotel.logs.errorTraces           trace IDs remembered as errored, whose later lines are all kept (default: 4096)
+
+A ratio of 1 with no dedupe limit (0) ships everything, as before.
+In tail sampling mode every trace is recorded as sampled, so the sampled flag says nothing about the final decision
+and is ignored (keepSampled=false): only errors, the ratio and the dedupe limit apply.
+ */
+public record LogSamplingConfig(double ratio,
+                                boolean keepSampled,
+                                int dedupeLimit,
+                                Duration dedupeWindow,
+                                int maxTemplates,
+                                int errorTraces) {
+
+    public LogSamplingConfig {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("otel.logs.sampling.ratio must be between 0 and 1");
+        }
+        if (dedupeLimit < 0 || maxTemplates < 1 || errorTraces < 1) {
+            throw new IllegalArgumentException(
+                    "otel.logs.dedupe.limit must not be negative, otel.logs.dedupe.maxTemplates and otel.logs.errorTraces must be positive");
+        }
+    }
+
+    public static LogSamplingConfig fromSystemProperties() {
+        return new LogSamplingConfig(
+                Double.parseDouble(System.getProperty("otel.logs.sampling.ratio", "0.1")),
+                SamplingMode.fromEnvironment() == SamplingMode.HEAD,
+                Integer.getInteger("otel.logs.dedupe.limit", 5),
+                Duration.ofMillis(Long.getLong("otel.logs.dedupe.windowMs", 10_000)),
+                Integer.getInteger("otel.logs.dedupe.maxTemplates", 1_000),
+                Integer.getInteger("otel.logs.errorTraces", 4_096));
+    }
+}
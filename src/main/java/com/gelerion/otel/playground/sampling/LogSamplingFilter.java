@@ -0,0 +1,215 @@
+package com.gelerion.otel.playground.sampling;
+
+import com.gelerion.otel.playground.utils.RequestCtxParams;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.opentelemetry.api.trace.TraceFlags;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.async.RingBufferLogEvent;
+import org.apache.logging.log4j.core.config.Node;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.core.impl.MutableLogEvent;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.logging.log4j.message.ReusableParameterizedMessage;
+import org.apache.logging.log4j.util.ReadOnlyStringMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Decides which log lines go to the OpenTelemetry appender (and so to Loki). Attached to that appender's ref in
+log4j2.xml as <LogSampling/>; the console still gets every line. Settings: LogSamplingConfig.
+
+A line is shipped if:
+  1. it is WARN or more severe (an ERROR also marks its trace as errored), or
+  2. its trace is sampled (trace_flags), or was marked as errored by an earlier ERROR line, or
+  3. its trace ID falls into the ratio (per trace, like the tail sampler's baseline: all lines of a trace or none),
+     and its message template hasn't been shipped dedupeLimit times in the current window yet.
+Lines without a trace (startup, background threads) skip step 3's ratio but are deduplicated.
+Duplicates beyond the limit are counted; the next time that template comes up in a new window, one summary line
+("Suppressed N ...") is logged with the template and the count.
+
+The lines of an errored trace that came before its first ERROR are already gone: nothing is buffered.
+
+The trace comes from the event's context data (OpenTelemetryContextDataProvider), not from Context.current(), so this
+also works on the background thread of asynchronous loggers. A dropped line never becomes an OTel log record: the
+appender's mapping, the batch queue and the OTLP serialization are all skipped.
+ */
+@Plugin(name = "LogSampling", category = Node.CATEGORY, elementType = Filter.ELEMENT_TYPE, printObject = true)
+public final class LogSamplingFilter extends AbstractFilter {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // Process-wide, so they survive a Log4j reconfiguration (which creates a new filter). See MetricsProvider.observeLogSampling.
+    private static final LongAdder SHIPPED = new LongAdder();
+    private static final LongAdder SAMPLED_OUT = new LongAdder();
+    private static final LongAdder DUPLICATES = new LongAdder();
+
+    private final LogSamplingConfig config;
+    private final long ratioBound;
+    private final long windowNanos;
+    private final Cache<String, Boolean> erroredTraces;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private static final class Window {
+        long startNanos;
+        int shipped;
+        int suppressed;
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    LogSamplingFilter(LogSamplingConfig config) {
+        super(Result.NEUTRAL, Result.DENY);
+        this.config = config;
+        this.ratioBound = TraceIdRatio.bound(config.ratio());
+        this.windowNanos = config.dedupeWindow().toNanos();
+        this.erroredTraces = Caffeine.newBuilder()
+                .maximumSize(config.errorTraces())
+                .build();
+    }
+
+    @PluginFactory
+    public static LogSamplingFilter createFilter() {
+        return new LogSamplingFilter(LogSamplingConfig.fromSystemProperties());
+    }
+
+    // Only this overload is called for filters on an appender ref.
+    @Override
+    public Result filter(LogEvent event) {
+        // Our own summary lines.
+        if (logger.getName().equals(event.getLoggerName())) {
+            return onMatch;
+        }
+        ReadOnlyStringMap contextData = event.getContextData();
+        String traceId = contextData.getValue(RequestCtxParams.TRACE_ID);
+
+        if (event.getLevel().isMoreSpecificThan(Level.WARN)) {
+            if (traceId != null && event.getLevel().isMoreSpecificThan(Level.ERROR)) {
+                erroredTraces.put(traceId, Boolean.TRUE);
+            }
+            return shipped();
+        }
+        if (traceId != null) {
+            String traceFlags = contextData.getValue(RequestCtxParams.TRACE_FLAGS);
+            if (config.keepSampled() && traceFlags != null && TraceFlags.fromHex(traceFlags, 0).isSampled()) {
+                return shipped();
+            }
+            if (erroredTraces.getIfPresent(traceId) != null) {
+                return shipped();
+            }
+            if (!inRatio(traceId)) {
+                SAMPLED_OUT.increment();
+                return onMismatch;
+            }
+        }
+        return deduplicate(event.getMessage());
+    }
+
+    // Mixed: TraceIdRatioBased compares the same digits as TraceIdRatio.random, so with a ratio head sampler the traces
+    // in our ratio would otherwise all be sampled already, and not a single unsampled trace would be shipped.
+    private boolean inRatio(String traceId) {
+        if (traceId.length() != 32) {
+            return ThreadLocalRandom.current().nextLong(Long.MAX_VALUE) < ratioBound;
+        }
+        return TraceIdRatio.mixed(traceId) < ratioBound;
+    }
+
+    private Result deduplicate(Message message) {
+        if (config.dedupeLimit() == 0) {
+            return shipped();
+        }
+        String template = template(message);
+        long now = System.nanoTime();
+        Window window = windows.get(template);
+        if (window == null) {
+            if (windows.size() >= config.maxTemplates()) {
+                return shipped();
+            }
+            window = windows.computeIfAbsent(template, __ -> new Window(now));
+        }
+
+        int suppressedBefore = 0;
+        boolean ship;
+        synchronized (window) {
+            if (now - window.startNanos >= windowNanos) {
+                suppressedBefore = window.suppressed;
+                window.startNanos = now;
+                window.shipped = 0;
+                window.suppressed = 0;
+            }
+            ship = window.shipped < config.dedupeLimit();
+            if (ship) window.shipped++;
+            else window.suppressed++;
+        }
+        if (suppressedBefore > 0) {
+            summarize(template, suppressedBefore);
+        }
+        if (!ship) {
+            DUPLICATES.increment();
+            return onMismatch;
+        }
+        return shipped();
+    }
+
+    // The template ("Injected headers: {}") of parameterized messages; other messages are keyed by their text.
+    // With thread locals or asynchronous loggers, the event carries the format itself instead of the original message.
+    private static String template(Message message) {
+        String format = null;
+        if (message instanceof ParameterizedMessage parameterized) {
+            format = parameterized.getFormat();
+        } else if (message instanceof ReusableParameterizedMessage reusable) {
+            format = reusable.getFormat();
+        } else if (message instanceof MutableLogEvent mutable) {
+            format = mutable.getFormat();
+        } else if (message instanceof RingBufferLogEvent ringBuffer) {
+            format = ringBuffer.getFormat();
+        }
+        return format != null ? format : message.getFormattedMessage();
+    }
+
+    // Logged outside the trace that happened to bring the template up again; it covers many traces.
+    private void summarize(String template, int suppressed) {
+        try (Scope __ = Context.root().makeCurrent()) {
+            logger.atInfo().addKeyValue("log.template", template).addKeyValue("log.suppressed", suppressed)
+                    .log("Suppressed {} duplicate log lines within {}s", suppressed,
+                            TimeUnit.NANOSECONDS.toSeconds(windowNanos));
+        }
+    }
+
+    private Result shipped() {
+        SHIPPED.increment();
+        return onMatch;
+    }
+
+    public static long shippedLines() {
+        return SHIPPED.sum();
+    }
+
+    public static long sampledOutLines() {
+        return SAMPLED_OUT.sum();
+    }
+
+    public static long duplicateLines() {
+        return DUPLICATES.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LogSampling" + config;
+    }
+}
@@ -0,0 +1,125 @@
+package com.gelerion.otel.playground.sampling;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/*
+Head sampler that keeps at most `rate` new traces per second per span name (for SERVER spans: per route, since the
+span name is "METHOD /route/template"), plus a short burst. Above that, root spans are dropped, so the export volume
+stays flat however much the traffic grows, and a busy route can't crowd out a quiet one.
+
+Meant to be used as the root sampler of Sampler.parentBased(...): a request that arrives with a traceparent follows
+the caller's decision (a sampled parent is always kept), and child spans follow their local root.
+
+Each span name has a token bucket, implemented as GCRA (a "virtual scheduling" token bucket): a single timestamp per
+bucket, updated with one CAS, no lock and no refill thread. The rate can be changed at runtime (see setRate) and
+applies to the next decision.
+ */
+public class RateLimitingSampler implements Sampler {
+    // Span names are route templates, so this is plenty; beyond it, all other names share one bucket.
+    private static final int MAX_BUCKETS = 1_000;
+    private static final String OVERFLOW = "_other";
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile double ratePerSecond;
+    private volatile double burst;
+
+    public RateLimitingSampler(double ratePerSecond, double burst) {
+        setRate(ratePerSecond, burst);
+    }
+
+    /*
+    -Dotel.sampler.rate   traces per second per span name (default: 100)
+    -Dotel.sampler.burst  traces allowed at once above the rate (default: same as the rate, i.e. one second's worth)
+     */
+    public static RateLimitingSampler fromSystemProperties() {
+        double rate = Double.parseDouble(System.getProperty("otel.sampler.rate", "100"));
+        double burst = Double.parseDouble(System.getProperty("otel.sampler.burst", String.valueOf(rate)));
+        return new RateLimitingSampler(rate, burst);
+    }
+
+    // A rate of 0 drops every new trace (requests with a sampled parent are still kept by parentBased).
+    public void setRate(double ratePerSecond, double burst) {
+        if (ratePerSecond < 0 || burst < 0 || Double.isNaN(ratePerSecond) || Double.isNaN(burst)) {
+            throw new IllegalArgumentException("The sampling rate and burst must not be negative");
+        }
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(burst, 1);
+    }
+
+    public double rate() {
+        return ratePerSecond;
+    }
+
+    public double burst() {
+        return burst;
+    }
+
+    @Override
+    public SamplingResult shouldSample(Context parentContext, String traceId, String name, SpanKind spanKind,
+                                       Attributes attributes, List<LinkData> parentLinks) {
+        Bucket bucket = buckets.get(name);
+        if (bucket == null) {
+            bucket = buckets.size() < MAX_BUCKETS
+                    ? buckets.computeIfAbsent(name, k -> new Bucket())
+                    : buckets.computeIfAbsent(OVERFLOW, k -> new Bucket());
+        }
+
+        if (bucket.tryAcquire(ratePerSecond, burst, System.nanoTime())) {
+            bucket.sampled.increment();
+            return SamplingResult.recordAndSample();
+        }
+        bucket.dropped.increment();
+        return SamplingResult.drop();
+    }
+
+    // Sampled and dropped root decisions per span name, for the sampler's own metrics.
+    public void forEachCount(BiConsumer<String, Bucket> consumer) {
+        buckets.forEach(consumer);
+    }
+
+    @Override
+    public String getDescription() {
+        return String.format(Locale.ROOT, "RateLimitingSampler{rate=%.2f/s, burst=%.0f}", ratePerSecond, burst);
+    }
+
+    public static final class Bucket {
+        // GCRA's theoretical arrival time: when the bucket will be full again, in System.nanoTime() units.
+        private final AtomicLong tat = new AtomicLong(System.nanoTime());
+        private final LongAdder sampled = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        boolean tryAcquire(double ratePerSecond, double burst, long now) {
+            if (ratePerSecond <= 0) return false;
+            long interval = (long) (1e9 / ratePerSecond);
+            long tolerance = (long) ((burst - 1) * interval);
+            while (true) {
+                long current = tat.get();
+                long base = Math.max(current, now);
+                // Taking one more token would push the bucket past its burst allowance.
+                if (base - now > tolerance) return false;
+                if (tat.compareAndSet(current, base + interval)) return true;
+            }
+        }
+
+        public long sampled() {
+            return sampled.sum();
+        }
+
+        public long dropped() {
+            return dropped.sum();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.gelerion.otel.playground.sampling;
+
+import java.util.Locale;
+
+// Where the keep/drop decision for a trace is made. Switch with -Dotel.sampler.mode=tail, e.g. `make up sampling=tail`.
+public enum SamplingMode {
+    // Decided when the trace starts: RateLimitingSampler (per-route cap), parent-based.
+    HEAD,
+    // Everything is recorded; TailSamplingSpanProcessor decides once the local root span has ended.
+    TAIL;
+
+    public static SamplingMode fromEnvironment() {
+        String value = System.getProperty("otel.sampler.mode");
+        if (value == null || value.isBlank()) {
+            return HEAD;
+        }
+        return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
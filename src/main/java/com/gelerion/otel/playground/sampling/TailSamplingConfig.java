@@ -0,0 +1,36 @@
+package com.gelerion.otel.playground.sampling;
+
+import java.time.Duration;
+
+/*
+In-process tail sampling settings (system properties), used with -Dotel.sampler.mode=tail.
+  -Dotel.tail.latencyThresholdMs   keep traces whose local root took at least this long (default: 1500)
+  -Dotel.tail.baselineRatio        share of the remaining (fast, successful) traces to keep anyway (default: 0.05)
+  -Dotel.tail.maxTraces            traces buffered while waiting for their root span; oldest evicted beyond (default: 10000)
+  -Dotel.tail.maxSpansPerTrace     spans buffered per trace; further spans of that trace are dropped (default: 512)
+  -Dotel.tail.maxTraceAgeMs        an undecided trace older than this is evicted (its root never ended here) (default: 30000)
+ */
+public record TailSamplingConfig(Duration latencyThreshold,
+                                 double baselineRatio,
+                                 int maxTraces,
+                                 int maxSpansPerTrace,
+                                 Duration maxTraceAge) {
+
+    public TailSamplingConfig {
+        if (baselineRatio < 0 || baselineRatio > 1) {
+            throw new IllegalArgumentException("otel.tail.baselineRatio must be between 0 and 1");
+        }
+        if (maxTraces < 1 || maxSpansPerTrace < 1) {
+            throw new IllegalArgumentException("otel.tail.maxTraces and otel.tail.maxSpansPerTrace must be positive");
+        }
+    }
+
+    public static TailSamplingConfig fromSystemProperties() {
+        return new TailSamplingConfig(
+                Duration.ofMillis(Long.getLong("otel.tail.latencyThresholdMs", 1_500)),
+                Double.parseDouble(System.getProperty("otel.tail.baselineRatio", "0.05")),
+                Integer.getInteger("otel.tail.maxTraces", 10_000),
+                Integer.getInteger("otel.tail.maxSpansPerTrace", 512),
+                Duration.ofMillis(Long.getLong("otel.tail.maxTraceAgeMs", 30_000)));
+    }
+}
@@ -0,0 +1,287 @@
+package com.gelerion.otel.playground.sampling;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Tail sampling in the SDK: ended spans are held back per trace until the trace's local root span ends (the SERVER span,
+or any span whose parent is remote or absent), and only then is the whole trace either forwarded to the next processor
+(the BatchSpanProcessor) or dropped. A trace is kept if:
+  1. any of its spans has status ERROR (e.g. the injected DB/recommendations failures), or
+  2. its local root took at least latencyThreshold, or
+  3. its trace ID falls into the baseline ratio (deterministic per trace ID, like TraceIdRatioBased).
+
+The head sampler must record everything for this to work (see SdkTracerProviderConfig, mode "tail").
+
+Memory is bounded: traces live in 16 shards (LinkedHashMaps in arrival order, each behind its own lock). The oldest
+undecided trace is evicted when a new trace arrives at a full shard. A trace older than maxTraceAge is evicted by the
+next span ending in its shard, or at the latest by the "tail-sampling-sweeper" thread, which checks every shard once a
+second: a trace whose root never ends here doesn't wait for traffic to be let go. Spans that end after their trace
+was decided (rare: work that outlives the request) follow the decision, which is remembered for a while.
+
+A decision only needs the trace's error flag, the root's latency and the trace ID, so it is made and published while
+the trace is taken out of its shard, under the shard's lock: a child ending at the same time is either in the trace
+or sees the decision, never an undecided gap. The forwarding happens outside of the lock.
+ */
+public class TailSamplingSpanProcessor implements SpanProcessor {
+    private static final int SHARDS = 16;
+    // Decided trace IDs remembered per shard, for spans arriving after the decision.
+    private static final int DECISIONS_PER_SHARD = 1_024;
+    // How often the sweeper looks for traces older than maxTraceAge (more often if that is shorter).
+    private static final long SWEEP_INTERVAL_MS = 1_000;
+
+    private static final AttributeKey<String> DECISION = AttributeKey.stringKey("sampling.decision");
+    private static final AttributeKey<String> REASON = AttributeKey.stringKey("reason");
+    private static final Attributes KEPT_ERROR = Attributes.of(DECISION, "kept", REASON, "error");
+    private static final Attributes KEPT_LATENCY = Attributes.of(DECISION, "kept", REASON, "latency");
+    private static final Attributes KEPT_BASELINE = Attributes.of(DECISION, "kept", REASON, "baseline");
+    private static final Attributes DROPPED = Attributes.of(DECISION, "dropped", REASON, "none");
+
+    private final TailSamplingConfig config;
+    private final SpanProcessor next;
+    private final Shard[] shards = new Shard[SHARDS];
+    private final long baselineBound;
+    private final Thread sweeper;
+    private volatile DoubleHistogram decisionWait;
+
+    // For the metrics (see MetricsProvider.observeTailSampling).
+    private final AtomicInteger bufferedTraces = new AtomicInteger();
+    private final AtomicInteger bufferedSpans = new AtomicInteger();
+    private final LongAdder keptError = new LongAdder();
+    private final LongAdder keptLatency = new LongAdder();
+    private final LongAdder keptBaseline = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder evictedCapacity = new LongAdder();
+    private final LongAdder evictedAge = new LongAdder();
+    private final LongAdder droppedOverLimit = new LongAdder();
+
+    private TailSamplingSpanProcessor(TailSamplingConfig config, SpanProcessor next) {
+        this.config = config;
+        this.next = next;
+        this.baselineBound = TraceIdRatio.bound(config.baselineRatio());
+        int tracesPerShard = Math.max(1, config.maxTraces() / SHARDS);
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(tracesPerShard);
+        }
+        this.sweeper = Thread.ofPlatform().daemon().name("tail-sampling-sweeper").unstarted(this::sweep);
+    }
+
+    public static TailSamplingSpanProcessor start(TailSamplingConfig config, SpanProcessor next) {
+        TailSamplingSpanProcessor processor = new TailSamplingSpanProcessor(config, next);
+        processor.sweeper.start();
+        return processor;
+    }
+
+    private static final class PendingTrace {
+        final long firstEndNanos = System.nanoTime();
+        final List<ReadableSpan> spans = new ArrayList<>();
+        boolean error;
+    }
+
+    private final class Shard {
+        final int maxTraces;
+        final LinkedHashMap<String, PendingTrace> pending = new LinkedHashMap<>();
+        final LinkedHashMap<String, Boolean> decided = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > DECISIONS_PER_SHARD;
+            }
+        };
+
+        Shard(int maxTraces) {
+            this.maxTraces = maxTraces;
+        }
+
+        // Drops undecided traces that are too old, and with makeRoom the oldest one if the shard is full. Called with
+        // the lock held.
+        void evict(long now, boolean makeRoom) {
+            long maxAge = config.maxTraceAge().toNanos();
+            Iterator<PendingTrace> it = pending.values().iterator();
+            while (it.hasNext()) {
+                PendingTrace oldest = it.next();
+                boolean full = makeRoom && pending.size() >= maxTraces;
+                boolean expired = now - oldest.firstEndNanos > maxAge;
+                if (!full && !expired) break;
+                it.remove();
+                (expired ? evictedAge : evictedCapacity).add(oldest.spans.size());
+                release(oldest);
+            }
+        }
+    }
+
+    // Called by MetricsProvider once the meter is available.
+    public void recordDecisionWaitTo(DoubleHistogram histogram) {
+        this.decisionWait = histogram;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+        next.onStart(parentContext, span);
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return next.isStartRequired();
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        SpanContext spanContext = span.getSpanContext();
+        if (!spanContext.isSampled()) {
+            return;
+        }
+        String traceId = spanContext.getTraceId();
+        boolean error = span.toSpanData().getStatus().getStatusCode() == StatusCode.ERROR;
+        SpanContext parent = span.getParentSpanContext();
+        boolean localRoot = !parent.isValid() || parent.isRemote();
+
+        Shard shard = shards[(traceId.hashCode() & 0x7fffffff) % SHARDS];
+        long now = System.nanoTime();
+        PendingTrace trace;
+        Boolean lateDecision;
+        boolean keep = false;
+        synchronized (shard) {
+            shard.evict(now, false);
+            lateDecision = shard.decided.get(traceId);
+            if (lateDecision != null) {
+                trace = null;
+            } else if (localRoot) {
+                trace = shard.pending.remove(traceId);
+                if (trace != null) release(trace);
+                keep = decide(traceId, span, trace, error);
+                shard.decided.put(traceId, keep);
+            } else {
+                trace = shard.pending.get(traceId);
+                if (trace == null) {
+                    shard.evict(now, true);
+                    trace = new PendingTrace();
+                    shard.pending.put(traceId, trace);
+                    bufferedTraces.incrementAndGet();
+                }
+                if (trace.spans.size() >= config.maxSpansPerTrace()) {
+                    droppedOverLimit.increment();
+                } else {
+                    trace.spans.add(span);
+                    trace.error |= error;
+                    bufferedSpans.incrementAndGet();
+                }
+                return;
+            }
+        }
+
+        if (lateDecision != null) {
+            if (lateDecision) next.onEnd(span);
+            return;
+        }
+
+        DoubleHistogram decisionWait = this.decisionWait;
+        if (trace != null && decisionWait != null) {
+            decisionWait.record((now - trace.firstEndNanos) / 1_000_000_000.0);
+        }
+        if (keep) {
+            if (trace != null) trace.spans.forEach(next::onEnd);
+            next.onEnd(span);
+        }
+    }
+
+    // Called with the shard's lock held, so it only looks at what is already at hand.
+    private boolean decide(String traceId, ReadableSpan root, PendingTrace trace, boolean rootError) {
+        if (rootError || (trace != null && trace.error)) {
+            keptError.increment();
+            return true;
+        }
+        if (root.getLatencyNanos() >= config.latencyThreshold().toNanos()) {
+            keptLatency.increment();
+            return true;
+        }
+        if (TraceIdRatio.random(traceId) < baselineBound) {
+            keptBaseline.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    // Evicts the traces older than maxTraceAge from every shard, also from those no span has ended in lately.
+    private void sweep() {
+        long intervalMs = Math.max(1, Math.min(SWEEP_INTERVAL_MS, config.maxTraceAge().toMillis()));
+        while (true) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (Shard shard : shards) {
+                synchronized (shard) {
+                    shard.evict(now, false);
+                }
+            }
+        }
+    }
+
+    private void release(PendingTrace trace) {
+        bufferedTraces.decrementAndGet();
+        bufferedSpans.addAndGet(-trace.spans.size());
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    // Undecided traces are dropped on shutdown: their roots never ended.
+    @Override
+    public CompletableResultCode shutdown() {
+        sweeper.interrupt();
+        return next.shutdown();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+        return next.forceFlush();
+    }
+
+    public int bufferedTraces() {
+        return bufferedTraces.get();
+    }
+
+    public int bufferedSpans() {
+        return bufferedSpans.get();
+    }
+
+    // Decisions by outcome; the attribute sets are the ones the decision counter is reported with.
+    public Map<Attributes, Long> decisions() {
+        return Map.of(KEPT_ERROR, keptError.sum(), KEPT_LATENCY, keptLatency.sum(),
+                KEPT_BASELINE, keptBaseline.sum(), DROPPED, dropped.sum());
+    }
+
+    // Spans discarded before a decision, by reason.
+    public long evictedForCapacity() {
+        return evictedCapacity.sum();
+    }
+
+    public long evictedForAge() {
+        return evictedAge.sum();
+    }
+
+    public long droppedOverSpanLimit() {
+        return droppedOverLimit.sum();
+    }
+}
@@ -0,0 +1,33 @@
+package com.gelerion.otel.playground.sampling;
+
+/*
+Per-trace ratio decisions: a trace ID is either always in the ratio or always out, on every instance, so all spans or
+log lines of a trace are kept together. Used by the tail sampler's baseline and by the log sampling ratio.
+
+The lower 16 hex digits of a (W3C) trace ID are random, so comparing them to ratio * Long.MAX_VALUE keeps a stable
+share of trace IDs.
+ */
+final class TraceIdRatio {
+
+    private TraceIdRatio() {
+    }
+
+    static long bound(double ratio) {
+        return (long) (ratio * Long.MAX_VALUE);
+    }
+
+    // Compare with bound(ratio). The trace ID must have 32 hex digits.
+    static long random(String traceId) {
+        return Long.parseUnsignedLong(traceId, 16, 32, 16) >>> 1;
+    }
+
+    // Like random(), but the digits go through SplitMix64's finalizer first, so the result is independent of the
+    // decision of any other sampler that compares the same digits unmixed.
+    static long mixed(String traceId) {
+        long random = Long.parseUnsignedLong(traceId, 16, 32, 16);
+        random = (random ^ (random >>> 30)) * 0xbf58476d1ce4e5b9L;
+        random = (random ^ (random >>> 27)) * 0x94d049bb133111ebL;
+        random ^= random >>> 31;
+        return random >>> 1;
+    }
+}
@@ -0,0 +1,252 @@
+package com.gelerion.otel.playground.spool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+An append-only queue of byte records stored in fixed-size, memory-mapped segment files.
+
+Segment layout:
+  [int magic][int unused][long read position]  header; the read position survives restarts
+  [int length][payload] ...                     records; a zero length marks the end of the written part
+
+The payload is written before its length, so a record only becomes visible once it is complete.
+Records are consumed oldest first, with peek() then commit(). A fully consumed segment is deleted.
+The total size is bounded to maxSegments: rolling over to a new segment beyond that evicts the oldest segment,
+along with its unsent records. Dropping the oldest data first keeps the newest telemetry, which is what you want
+when the collector comes back.
+
+All methods are synchronized: exporters append from the SDK's export threads, and the replayer consumes.
+ */
+public class SegmentedSpool implements AutoCloseable {
+    private static final int MAGIC = 0x53504f4c; // "SPOL"
+    private static final int READ_POSITION_OFFSET = 8;
+    private static final int HEADER_BYTES = 16;
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    // Unread records and payload bytes across all segments.
+    private long depth;
+    private long bytes;
+    private long evicted;
+    private long nextSequence;
+
+    // A record handed out by peek(); commit it once it has been delivered.
+    public record Record(long segment, int position, byte[] payload) {}
+
+    public SegmentedSpool(Path directory, int segmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the spool at " + directory, e);
+        }
+    }
+
+    // Reopens the segments left by a previous run, oldest first.
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+        for (Path file : files) {
+            long sequence = Long.parseLong(file.getFileName().toString().replace(".seg", ""));
+            Segment segment = Segment.open(file, sequence, segmentBytes);
+            if (segment == null) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            segments.addLast(segment);
+            depth += segment.unreadRecords;
+            bytes += segment.unreadBytes;
+            nextSequence = sequence + 1;
+        }
+    }
+
+    // Returns false if the record can never fit into a segment (it is dropped).
+    public synchronized boolean append(byte[] payload) {
+        if (LENGTH_BYTES + payload.length > segmentBytes - HEADER_BYTES) {
+            return false;
+        }
+        Segment tail = segments.peekLast();
+        if (tail == null || tail.writePosition + LENGTH_BYTES + payload.length > segmentBytes) {
+            tail = roll();
+        }
+        tail.write(payload);
+        depth++;
+        bytes += payload.length;
+        notifyAll();
+        return true;
+    }
+
+    private Segment roll() {
+        if (segments.size() >= maxSegments) {
+            Segment oldest = segments.removeFirst();
+            evicted += oldest.unreadRecords;
+            depth -= oldest.unreadRecords;
+            bytes -= oldest.unreadBytes;
+            oldest.delete();
+        }
+        try {
+            Segment segment = Segment.create(directory.resolve("%020d.seg".formatted(nextSequence)), nextSequence, segmentBytes);
+            nextSequence++;
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create a spool segment in " + directory, e);
+        }
+    }
+
+    // The oldest unread record, or null if the spool is empty.
+    public synchronized Record peek() {
+        Segment head;
+        while ((head = segments.peekFirst()) != null) {
+            if (head.readPosition < head.writePosition) {
+                return head.read();
+            }
+            // Fully consumed; keep it only while it's still being written to.
+            if (head == segments.peekLast()) {
+                return null;
+            }
+            segments.removeFirst().delete();
+        }
+        return null;
+    }
+
+    // Waits up to timeoutMillis for a record to be appended. Returns immediately if the spool isn't empty.
+    public synchronized void awaitRecords(long timeoutMillis) throws InterruptedException {
+        if (depth == 0) {
+            wait(timeoutMillis);
+        }
+    }
+
+    // Marks a peeked record as consumed. No-op if its segment was evicted in the meantime.
+    public synchronized void commit(Record record) {
+        Segment head = segments.peekFirst();
+        if (head == null || head.sequence != record.segment() || head.readPosition != record.position()) {
+            return;
+        }
+        head.advance(record.payload().length);
+        depth--;
+        bytes -= record.payload().length;
+    }
+
+    public synchronized long depth() {
+        return depth;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    // Unsent records dropped because the disk budget was exhausted.
+    public synchronized long evicted() {
+        return evicted;
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.forEach(segment -> segment.buffer.force());
+    }
+
+    private static final class Segment {
+        final Path file;
+        final long sequence;
+        final MappedByteBuffer buffer;
+        int writePosition;
+        int readPosition;
+        long unreadRecords;
+        long unreadBytes;
+
+        private Segment(Path file, long sequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path file, long sequence, int size) throws IOException {
+            Segment segment = new Segment(file, sequence, map(file, size));
+            segment.buffer.putInt(0, MAGIC);
+            segment.readPosition = HEADER_BYTES;
+            segment.writePosition = HEADER_BYTES;
+            segment.buffer.putLong(READ_POSITION_OFFSET, HEADER_BYTES);
+            return segment;
+        }
+
+        // Scans an existing segment for its end. Returns null if it isn't a spool segment.
+        static Segment open(Path file, long sequence, int size) throws IOException {
+            if (Files.size(file) != size) return null;
+            Segment segment = new Segment(file, sequence, map(file, size));
+            if (segment.buffer.getInt(0) != MAGIC) return null;
+
+            int readPosition = (int) segment.buffer.getLong(READ_POSITION_OFFSET);
+            int position = HEADER_BYTES;
+            while (position + LENGTH_BYTES <= size) {
+                int length = segment.buffer.getInt(position);
+                if (length <= 0 || position + LENGTH_BYTES + length > size) break;
+                if (position >= readPosition) {
+                    segment.unreadRecords++;
+                    segment.unreadBytes += length;
+                }
+                position += LENGTH_BYTES + length;
+            }
+            segment.writePosition = position;
+            segment.readPosition = Math.min(Math.max(readPosition, HEADER_BYTES), position);
+            return segment;
+        }
+
+        private static MappedByteBuffer map(Path file, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed.
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        void write(byte[] payload) {
+            buffer.put(writePosition + LENGTH_BYTES, payload);
+            buffer.putInt(writePosition, payload.length);
+            writePosition += LENGTH_BYTES + payload.length;
+            unreadRecords++;
+            unreadBytes += payload.length;
+        }
+
+        Record read() {
+            byte[] payload = new byte[buffer.getInt(readPosition)];
+            buffer.get(readPosition + LENGTH_BYTES, payload);
+            return new Record(sequence, readPosition, payload);
+        }
+
+        void advance(int length) {
+            readPosition += LENGTH_BYTES + length;
+            buffer.putLong(READ_POSITION_OFFSET, readPosition);
+            unreadRecords--;
+            unreadBytes -= length;
+        }
+
+        // The mapping itself is released when the buffer is garbage collected (there's no public unmap in Java 21).
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete the spool segment " + file, e);
+            }
+        }
+    }
+}
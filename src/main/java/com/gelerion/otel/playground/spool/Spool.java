@@ -0,0 +1,179 @@
+package com.gelerion.otel.playground.spool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+The spool of one signal (traces, metrics or logs): serialized OTLP export requests are appended to a SegmentedSpool
+by the exporter, and a background thread replays them to the collector, oldest first.
+
+The exporter never waits for the collector, so a stalled collector no longer fills the batch processor's queue
+(which silently drops spans), and retries happen on this one thread instead of on the SDK's export threads.
+Delivery is at-least-once: a record is only committed after the collector accepted it.
+ */
+public class Spool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final Duration MIN_BACKOFF = Duration.ofMillis(200);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    // All spools opened by this process, for MetricsProvider.observeSpools.
+    private static final List<Spool> OPENED = new CopyOnWriteArrayList<>();
+
+    private final String signal;
+    private final URI endpoint;
+    private final Duration exportTimeout;
+    private final SegmentedSpool storage;
+    private final HttpClient client;
+    private final Thread replayer;
+
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder oversized = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private volatile boolean closed;
+
+    private Spool(SpoolConfig config, String signal, String endpoint) {
+        this.signal = signal;
+        this.endpoint = URI.create(endpoint);
+        this.exportTimeout = config.exportTimeout();
+        this.storage = new SegmentedSpool(config.directory().resolve(signal), config.segmentBytes(), config.maxSegments());
+        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        this.replayer = Thread.ofPlatform().daemon().name("spool-replay-" + signal).unstarted(this::replay);
+    }
+
+    public static Spool open(SpoolConfig config, String signal, String endpoint) {
+        Spool spool = new Spool(config, signal, endpoint);
+        spool.replayer.start();
+        OPENED.add(spool);
+        logger.atInfo().addKeyValue("signal", signal).addKeyValue("spool.depth", spool.storage.depth())
+                .log("Spool opened for {}", endpoint);
+        return spool;
+    }
+
+    public static List<Spool> opened() {
+        return OPENED;
+    }
+
+    // Called by the exporters with a serialized (protobuf) OTLP export request.
+    public boolean append(byte[] exportRequest) {
+        if (storage.append(exportRequest)) {
+            return true;
+        }
+        oversized.increment();
+        return false;
+    }
+
+    private void replay() {
+        int failures = 0;
+        while (!closed) {
+            try {
+                SegmentedSpool.Record record = storage.peek();
+                if (record == null) {
+                    storage.awaitRecords(1_000);
+                    continue;
+                }
+
+                int status = post(record.payload());
+                if (status >= 200 && status < 300) {
+                    storage.commit(record);
+                    replayed.increment();
+                    failures = 0;
+                } else if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                    // The collector will never accept this request; retrying would block everything behind it.
+                    logger.atWarn().addKeyValue("signal", signal).addKeyValue("http.response.status_code", status)
+                            .log("Collector rejected a spooled export request, dropping it");
+                    storage.commit(record);
+                    rejected.increment();
+                } else {
+                    backOff(++failures);
+                }
+            } catch (IOException e) {
+                try {
+                    backOff(++failures);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                // E.g. a segment that can't be created or deleted (UncheckedIOException): the replayer must not die of
+                // it, or the spool only fills up and evicts from then on.
+                if (closed) return;
+                logger.atWarn().addKeyValue("signal", signal).setCause(e)
+                        .log("Replaying the spool failed, retrying after a backoff");
+                try {
+                    backOff(++failures);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private int post(byte[] payload) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .timeout(exportTimeout)
+                .header("Content-Type", "application/x-protobuf")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    // Exponential backoff with full jitter, capped, so a recovering collector isn't hit by every retry at once.
+    private void backOff(int failures) throws InterruptedException {
+        long ceiling = Math.min(MAX_BACKOFF.toMillis(), MIN_BACKOFF.toMillis() << Math.min(failures, 16));
+        Thread.sleep(ThreadLocalRandom.current().nextLong(MIN_BACKOFF.toMillis(), ceiling + 1));
+    }
+
+    public String signal() {
+        return signal;
+    }
+
+    // Export requests waiting to be replayed.
+    public long depth() {
+        return storage.depth();
+    }
+
+    public long bytes() {
+        return storage.bytes();
+    }
+
+    public long replayed() {
+        return replayed.sum();
+    }
+
+    // Dropped because the disk budget was exhausted (oldest first).
+    public long evicted() {
+        return storage.evicted();
+    }
+
+    // Dropped because a single request is larger than a segment.
+    public long oversized() {
+        return oversized.sum();
+    }
+
+    // Dropped because the collector answered with a non-retryable 4xx.
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    // Unsent records stay on disk and are replayed on the next start.
+    @Override
+    public void close() {
+        closed = true;
+        replayer.interrupt();
+        storage.close();
+        OPENED.remove(this);
+    }
+}
@@ -0,0 +1,35 @@
+package com.gelerion.otel.playground.spool;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/*
+Disk spool settings (system properties). The spool is off by default.
+  -Dotel.spool.enabled          true to put a disk spool between the batch processors and the collector
+  -Dotel.spool.dir              spool directory, one subdirectory per signal (default: ./spool)
+  -Dotel.spool.segmentBytes     size of one memory-mapped segment file (default: 8 MiB)
+  -Dotel.spool.maxBytes         disk budget per signal; the oldest segment is dropped beyond it (default: 256 MiB)
+  -Dotel.spool.exportTimeoutMs  timeout of one replay request to the collector (default: 10000)
+ */
+public record SpoolConfig(boolean enabled, Path directory, int segmentBytes, long maxBytes, Duration exportTimeout) {
+
+    public SpoolConfig {
+        if (segmentBytes < 64 * 1024) throw new IllegalArgumentException("otel.spool.segmentBytes must be at least 64 KiB");
+        if (maxBytes < 2L * segmentBytes) {
+            throw new IllegalArgumentException("otel.spool.maxBytes must hold at least two segments");
+        }
+    }
+
+    public static SpoolConfig fromSystemProperties() {
+        return new SpoolConfig(
+                Boolean.getBoolean("otel.spool.enabled"),
+                Path.of(System.getProperty("otel.spool.dir", "spool")),
+                Integer.getInteger("otel.spool.segmentBytes", 8 * 1024 * 1024),
+                Long.getLong("otel.spool.maxBytes", 256L * 1024 * 1024),
+                Duration.ofMillis(Long.getLong("otel.spool.exportTimeoutMs", 10_000)));
+    }
+
+    public int maxSegments() {
+        return (int) (maxBytes / segmentBytes);
+    }
+}
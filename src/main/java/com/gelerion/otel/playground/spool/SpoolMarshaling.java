@@ -0,0 +1,23 @@
+package com.gelerion.otel.playground.spool;
+
+import io.opentelemetry.exporter.internal.marshal.Marshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+final class SpoolMarshaling {
+
+    private SpoolMarshaling() {}
+
+    // Writes the request in the protobuf wire format (what the collector expects with Content-Type application/x-protobuf).
+    static CompletableResultCode append(Spool spool, Marshaler request) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(request.getBinarySerializedSize());
+        try {
+            request.writeBinaryTo(out);
+        } catch (IOException e) {
+            return CompletableResultCode.ofExceptionalFailure(e);
+        }
+        return spool.append(out.toByteArray()) ? CompletableResultCode.ofSuccess() : CompletableResultCode.ofFailure();
+    }
+}
@@ -0,0 +1,33 @@
+package com.gelerion.otel.playground.spool;
+
+import io.opentelemetry.exporter.internal.otlp.logs.LogsRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.logs.data.LogRecordData;
+import io.opentelemetry.sdk.logs.export.LogRecordExporter;
+
+import java.util.Collection;
+
+// Log counterpart of SpoolingSpanExporter (ExportLogsServiceRequest).
+public class SpoolingLogRecordExporter implements LogRecordExporter {
+    private final Spool spool;
+
+    public SpoolingLogRecordExporter(Spool spool) {
+        this.spool = spool;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<LogRecordData> logs) {
+        return SpoolMarshaling.append(spool, LogsRequestMarshaler.create(logs));
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        spool.close();
+        return CompletableResultCode.ofSuccess();
+    }
+}
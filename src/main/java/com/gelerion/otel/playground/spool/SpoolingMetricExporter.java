@@ -0,0 +1,55 @@
+package com.gelerion.otel.playground.spool;
+
+import io.opentelemetry.exporter.internal.otlp.metrics.MetricsRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.metrics.Aggregation;
+import io.opentelemetry.sdk.metrics.InstrumentType;
+import io.opentelemetry.sdk.metrics.data.AggregationTemporality;
+import io.opentelemetry.sdk.metrics.data.MetricData;
+import io.opentelemetry.sdk.metrics.export.AggregationTemporalitySelector;
+import io.opentelemetry.sdk.metrics.export.DefaultAggregationSelector;
+import io.opentelemetry.sdk.metrics.export.MetricExporter;
+
+import java.util.Collection;
+
+// Metric counterpart of SpoolingSpanExporter (ExportMetricsServiceRequest).
+// Cumulative temporality by default, like the OTLP exporter: a replayed (late) point still carries the full total.
+// With delta temporality (-Dotel.metrics.temporality=delta) an evicted segment is a gap the backend can't fill in.
+public class SpoolingMetricExporter implements MetricExporter {
+    private final Spool spool;
+    private final DefaultAggregationSelector aggregationSelector;
+    private final AggregationTemporalitySelector temporalitySelector;
+
+    public SpoolingMetricExporter(Spool spool, DefaultAggregationSelector aggregationSelector,
+                                  AggregationTemporalitySelector temporalitySelector) {
+        this.spool = spool;
+        this.aggregationSelector = aggregationSelector;
+        this.temporalitySelector = temporalitySelector;
+    }
+
+    @Override
+    public AggregationTemporality getAggregationTemporality(InstrumentType instrumentType) {
+        return temporalitySelector.getAggregationTemporality(instrumentType);
+    }
+
+    @Override
+    public Aggregation getDefaultAggregation(InstrumentType instrumentType) {
+        return aggregationSelector.getDefaultAggregation(instrumentType);
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<MetricData> metrics) {
+        return SpoolMarshaling.append(spool, MetricsRequestMarshaler.create(metrics));
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        spool.close();
+        return CompletableResultCode.ofSuccess();
+    }
+}
@@ -0,0 +1,35 @@
+package com.gelerion.otel.playground.spool;
+
+import io.opentelemetry.exporter.internal.otlp.traces.TraceRequestMarshaler;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.Collection;
+
+// Serializes each batch into an OTLP ExportTraceServiceRequest and appends it to the spool; the spool's replayer
+// sends it to the collector. Uses the same (internal) marshaler as OtlpHttpSpanExporter.
+public class SpoolingSpanExporter implements SpanExporter {
+    private final Spool spool;
+
+    public SpoolingSpanExporter(Spool spool) {
+        this.spool = spool;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        return SpoolMarshaling.append(spool, TraceRequestMarshaler.create(spans));
+    }
+
+    // Everything exported so far is already in the spool.
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        spool.close();
+        return CompletableResultCode.ofSuccess();
+    }
+}
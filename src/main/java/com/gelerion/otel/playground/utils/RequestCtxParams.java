@@ -4,4 +4,5 @@ public interface RequestCtxParams {
     String REQUEST_ID = "request_id";
     String TRACE_ID = "trace_id";
     String SPAN_ID = "span_id";
+    String TRACE_FLAGS = "trace_flags";
 }